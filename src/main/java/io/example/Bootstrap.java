@@ -0,0 +1,40 @@
+package io.example;
+
+import akka.javasdk.ServiceSetup;
+import akka.javasdk.annotations.Setup;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timer.TimerScheduler;
+import com.typesafe.config.Config;
+import io.example.application.RetentionSweeper;
+
+@Setup
+public class Bootstrap implements ServiceSetup {
+
+    private final ComponentClient componentClient;
+    private final TimerScheduler timerScheduler;
+    private final Config config;
+
+    public Bootstrap(ComponentClient componentClient, TimerScheduler timerScheduler, Config config) {
+        this.componentClient = componentClient;
+        this.timerScheduler = timerScheduler;
+        this.config = config;
+    }
+
+    @Override
+    public void onStartup() {
+        // The sweeper reschedules itself after each run. Timers are unique by
+        // name, so every instance starting up replaces the same timer.
+        if (config.getBoolean("flight.retention.enabled")) {
+            // The sweeper deletes what it archives, so it never falls back to
+            // a directory relative to wherever the service happens to run
+            if (!config.hasPath("flight.retention.archive-dir")) {
+                throw new IllegalStateException(
+                        "flight.retention.archive-dir must be set when flight.retention.enabled is true");
+            }
+            timerScheduler.createSingleTimer(
+                    RetentionSweeper.TIMER_NAME,
+                    config.getDuration("flight.retention.sweep-interval"),
+                    componentClient.forTimedAction().method(RetentionSweeper::sweep).deferred());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.example.api;
+
+import akka.javasdk.JsonSupport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.example.domain.Participant;
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.SlotIds;
+
+import java.time.format.DateTimeParseException;
+
+// Parses the lines of an availability import, one availability hour per line.
+// CSV lines are `slotId,participantId,participantType`, a header line starting
+// with `slotId` is skipped. NDJSON lines are objects with the same fields.
+// Each line is validated on its own, so an upload can be checked as it streams.
+public final class AvailabilityImport {
+
+    // Longer lines can't be a valid availability and are rejected without parsing
+    public static final int MAX_LINE_LENGTH = 1024;
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format fromContentType(String contentType) {
+            return contentType != null && contentType.contains("json") ? NDJSON : CSV;
+        }
+    }
+
+    // One line of the upload: either an availability to mark or the reason it was rejected
+    public record Line(long lineNumber, String slotId, Participant participant, String error) {
+        static Line valid(long lineNumber, String slotId, Participant participant) {
+            return new Line(lineNumber, slotId, participant, null);
+        }
+
+        static Line invalid(long lineNumber, String error) {
+            return new Line(lineNumber, null, null, error);
+        }
+
+        static Line skipped(long lineNumber) {
+            return new Line(lineNumber, null, null, null);
+        }
+
+        public boolean isValid() {
+            return participant != null;
+        }
+
+        public boolean isSkipped() {
+            return participant == null && error == null;
+        }
+    }
+
+    record JsonLine(String slotId, String participantId, String participantType) {
+    }
+
+    private AvailabilityImport() {
+    }
+
+    // Slots before `currentEpochHour` are rejected, as only future slots can be modified
+    public static Line parse(long lineNumber, String text, Format format, long currentEpochHour) {
+        if (text.length() > MAX_LINE_LENGTH) {
+            return Line.invalid(lineNumber, "Line is longer than " + MAX_LINE_LENGTH + " characters");
+        }
+        var line = text.strip();
+        if (line.isEmpty()) {
+            return Line.skipped(lineNumber);
+        }
+
+        String slotId, participantId, participantType;
+        if (format == Format.NDJSON) {
+            try {
+                var json = JsonSupport.getObjectMapper().readValue(line, JsonLine.class);
+                slotId = json.slotId();
+                participantId = json.participantId();
+                participantType = json.participantType();
+            } catch (JsonProcessingException e) {
+                return Line.invalid(lineNumber, "Malformed JSON");
+            }
+        } else {
+            var fields = line.split(",", -1);
+            if (lineNumber == 1 && fields[0].strip().equalsIgnoreCase("slotId")) {
+                return Line.skipped(lineNumber);
+            }
+            if (fields.length != 3) {
+                return Line.invalid(lineNumber, "Expected 3 fields: slotId,participantId,participantType");
+            }
+            slotId = fields[0].strip();
+            participantId = fields[1].strip();
+            participantType = fields[2].strip();
+        }
+
+        if (slotId == null || participantId == null || participantId.isBlank() || participantType == null) {
+            return Line.invalid(lineNumber, "Missing slotId, participantId or participantType");
+        }
+        try {
+            if (SlotIds.toEpochHour(slotId) < currentEpochHour) {
+                return Line.invalid(lineNumber, "Slot " + slotId + " is in the past");
+            }
+        } catch (DateTimeParseException e) {
+            return Line.invalid(lineNumber, "Invalid slotId format. Expected 'YYYY-MM-DD-HH'.");
+        }
+        ParticipantType type;
+        try {
+            type = ParticipantType.valueOf(participantType.strip().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Line.invalid(lineNumber, "Invalid participant type " + participantType);
+        }
+        return Line.valid(lineNumber, slotId, new Participant(participantId, type));
+    }
+}
@@ -0,0 +1,123 @@
+package io.example.api;
+
+import akka.http.javadsl.model.HttpRequest;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.annotations.http.Post;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+import io.example.application.BookingSlotEntity;
+import io.example.application.OperationalMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bulk import of availability hours, e.g. for the start of a term. The upload
+// is read as a stream, one line at a time, and each valid line is written to
+// its slot entity with bounded concurrency. The stream only pulls more of the
+// upload as writes complete, so a large file is never buffered in memory.
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/flight/imports")
+public class AvailabilityImportEndpoint extends AbstractHttpEndpoint {
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityImportEndpoint.class);
+
+    // Frames are allowed to be much longer than a valid line, so that a long
+    // line is reported as an error of that line instead of failing the stream
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+    private static final int PARALLELISM = 16;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    public static final String LINES_READ = "import.availability.lines-read";
+    public static final String LINES_IMPORTED = "import.availability.lines-imported";
+    public static final String LINES_FAILED = "import.availability.lines-failed";
+
+    private final ComponentClient componentClient;
+    private final Materializer materializer;
+
+    public AvailabilityImportEndpoint(ComponentClient componentClient, Materializer materializer) {
+        this.componentClient = componentClient;
+        this.materializer = materializer;
+    }
+
+    public record LineError(long lineNumber, String error) {
+    }
+
+    // Summary of an import. Only the first errors are listed, `failed` counts all of them.
+    public record ImportReport(long lines, long imported, long failed, List<LineError> errors) {
+    }
+
+    // Accepts CSV (text/csv, the default) or NDJSON (application/x-ndjson), see AvailabilityImport
+    @Post("/availability")
+    public CompletionStage<ImportReport> importAvailability(HttpRequest request) {
+        var format = AvailabilityImport.Format.fromContentType(request.entity().getContentType().toString());
+        var currentEpochHour = Instant.now().getEpochSecond() / 3600;
+        var lineNumbers = new AtomicLong();
+        var progress = new Progress();
+
+        return request.entity().getDataBytes()
+                .via(Framing.delimiter(ByteString.fromString("\n"), MAX_FRAME_LENGTH, FramingTruncation.ALLOW))
+                .map(bytes -> AvailabilityImport.parse(
+                        lineNumbers.incrementAndGet(), bytes.utf8String(), format, currentEpochHour))
+                .filter(line -> !line.isSkipped())
+                .mapAsyncUnordered(PARALLELISM, this::importLine)
+                .runWith(Sink.fold(progress, Progress::record), materializer)
+                .thenApply(Progress::report);
+    }
+
+    private CompletionStage<AvailabilityImport.Line> importLine(AvailabilityImport.Line line) {
+        if (!line.isValid()) {
+            return CompletableFuture.completedFuture(line);
+        }
+        return componentClient
+                .forEventSourcedEntity(line.slotId())
+                .method(BookingSlotEntity::markSlotAvailable)
+                .invokeAsync(new BookingSlotEntity.Command.MarkSlotAvailable(line.participant()))
+                .thenApply(done -> line)
+                .exceptionally(e -> AvailabilityImport.Line.invalid(line.lineNumber(), "Import failed: " + e.getMessage()));
+    }
+
+    // Accumulates the outcome of the lines. Only touched by the fold stage.
+    private static final class Progress {
+        private long lines;
+        private long imported;
+        private final List<LineError> errors = new ArrayList<>();
+        private long failed;
+
+        Progress record(AvailabilityImport.Line line) {
+            lines++;
+            OperationalMetrics.increment(LINES_READ);
+            if (line.isValid()) {
+                imported++;
+                OperationalMetrics.increment(LINES_IMPORTED);
+            } else {
+                failed++;
+                OperationalMetrics.increment(LINES_FAILED);
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new LineError(line.lineNumber(), line.error()));
+                }
+            }
+            if (lines % PROGRESS_INTERVAL == 0) {
+                log.info("Availability import progress: {} lines, {} imported, {} failed", lines, imported, failed);
+            }
+            return this;
+        }
+
+        ImportReport report() {
+            log.info("Availability import done: {} lines, {} imported, {} failed", lines, imported, failed);
+            errors.sort((a, b) -> Long.compare(a.lineNumber(), b.lineNumber()));
+            return new ImportReport(lines, imported, failed, List.copyOf(errors));
+        }
+    }
+}
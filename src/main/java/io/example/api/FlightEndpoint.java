@@ -1,21 +1,40 @@
 package io.example.api;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
+import io.example.application.AirfieldRegistry;
+import io.example.application.BookingIndexEntity;
+import io.example.application.BookingOutcomesView;
 import io.example.application.BookingSlotEntity;
+import io.example.application.ParticipantScheduleEntity;
 import io.example.application.ParticipantSlotsView;
+import io.example.application.TraceSpans;
 import io.example.domain.BookingEvent;
+import io.example.domain.FlightBookingState.BookingStatus;
 import io.example.domain.Participant;
+import io.example.domain.SelectionPolicy;
+import io.example.domain.SlotIds;
 import io.example.workflows.FlightBookingWorkflow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import akka.http.javadsl.model.HttpHeader;
 import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
+import akka.javasdk.CommandException;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Delete;
 import akka.javasdk.annotations.http.Get;
@@ -25,19 +44,33 @@ import akka.javasdk.client.ComponentClient;
 import akka.javasdk.http.AbstractHttpEndpoint;
 import akka.javasdk.http.HttpException;
 import akka.javasdk.http.HttpResponses;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
 import io.example.application.ParticipantSlotsView.SlotList;
 import io.example.domain.Participant.ParticipantType;
-import io.example.domain.Timeslot;
 
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
 @HttpEndpoint("/flight")
 public class FlightEndpoint extends AbstractHttpEndpoint {
     private final Logger log = LoggerFactory.getLogger(FlightEndpoint.class);
 
+    private static final Duration OUTCOME_STREAM_TIMEOUT = Duration.ofMinutes(2);
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final long MAX_MATRIX_HOURS = 14 * 24;
+    private static final int MATRIX_PARALLELISM = 16;
+
+    // Endpoint instances are created per request, so the dedupe store is shared
+    private static final IdempotencyStore<BookingReceipt> bookingReceipts =
+            new IdempotencyStore<>(10_000, Duration.ofHours(1), Clock.systemUTC());
+
     private final ComponentClient componentClient;
+    private final Materializer materializer;
 
-    public FlightEndpoint(ComponentClient componentClient) {
+    public FlightEndpoint(ComponentClient componentClient, Materializer materializer) {
         this.componentClient = componentClient;
+        this.materializer = materializer;
     }
 
     // Creates a new booking. All three identified participants will
@@ -51,16 +84,62 @@ public class FlightEndpoint extends AbstractHttpEndpoint {
             throw HttpException.badRequest("Cannot schedule an appointment for past dates");
 
         }
+        if (request.airfieldId() != null && !request.airfieldId().isBlank()
+                && AirfieldRegistry.getDefault().find(request.airfieldId().trim()).isEmpty()) {
+            throw HttpException.badRequest("Unknown airfield " + request.airfieldId());
+        }
+        if (request.autoAssigns()) {
+            if (request.joinsWaitlist()) {
+                throw HttpException.badRequest("Bookings that leave the aircraft or instructor open cannot join the waitlist");
+            }
+            try {
+                SelectionPolicy.fromName(request.selectionPolicy());
+            } catch (IllegalArgumentException e) {
+                throw HttpException.badRequest("Invalid selection policy. Expected 'PREFERRED_FIRST' or 'LEAST_UTILIZED'.");
+            }
+        }
+        var bookingId = resolveBookingId(request);
+        var receipt = new BookingReceipt(bookingId, slotId);
+
+        // Retried requests are answered from the dedupe store without touching
+        // the workflow, the agent or the slot entity again
+        var original = bookingReceipts.get(bookingId);
+        if (original.isPresent()) {
+            if (!original.get().slotId().equals(slotId)) {
+                throw HttpException.badRequest("Booking id " + bookingId + " is already used for another slot");
+            }
+            log.info("Returning original response for retried booking {}", bookingId);
+            return HttpResponses.created(original.get());
+        }
+
         log.info("Creating booking for slot {}: {}", slotId, request);
 
-        var command = new FlightBookingWorkflow.BookingCommand(slotId, request);
-         componentClient
-                 .forWorkflow(slotId)
-                 .method(FlightBookingWorkflow::startWorkflow)
-                 .invoke(command);
+        // The workflow is keyed by booking, so concurrent retries that miss the
+        // dedupe store still only start one workflow
+        var command = new FlightBookingWorkflow.BookingCommand(slotId, request.withBookingId(bookingId));
+        TraceSpans.inSpan(requestContext().tracing(), "FlightEndpoint.createBooking", slotId, bookingId, () ->
+                componentClient
+                        .forWorkflow(bookingId)
+                        .method(FlightBookingWorkflow::startWorkflow)
+                        .invoke(command));
+
+        return HttpResponses.created(bookingReceipts.putIfAbsent(bookingId, receipt));
 
-        return HttpResponses.created();
+    }
 
+    // Streams the outcome of a booking as server-sent events. The current status
+    // is emitted first, followed by each change until the booking is either
+    // booked or rejected, after which the stream completes.
+    @Get("/bookings/{bookingId}/outcome")
+    public HttpResponse bookingOutcome(String bookingId) {
+        var outcomes = componentClient
+                .forView()
+                .stream(BookingOutcomesView::streamOutcome)
+                .source(bookingId)
+                .takeWhile(outcome -> !BookingStatus.valueOf(outcome.status()).isFinal(), true)
+                .takeWithin(OUTCOME_STREAM_TIMEOUT);
+
+        return HttpResponses.serverSentEvents(outcomes);
     }
 
     // Cancels an existing booking. Note that both the slot
@@ -76,34 +155,175 @@ public class FlightEndpoint extends AbstractHttpEndpoint {
         return HttpResponses.ok();
     }
 
+    // Cancels an existing booking knowing only its booking ID. The slot is
+    // resolved through the booking index.
+    @Delete("/bookings/{bookingId}")
+    public HttpResponse cancelBookingById(String bookingId) {
+        BookingIndexEntity.State booking;
+        try {
+            booking = componentClient
+                    .forKeyValueEntity(bookingId)
+                    .method(BookingIndexEntity::getBooking)
+                    .invoke();
+        } catch (CommandException e) {
+            throw HttpException.notFound();
+        }
+        if (booking.canceled()) {
+            return HttpResponses.ok();
+        }
+
+        log.info("Canceling booking id {} in slot {}", bookingId, booking.slotId());
+        TraceSpans.inSpan(requestContext().tracing(), "FlightEndpoint.cancelBooking", booking.slotId(), bookingId, () ->
+                componentClient
+                        .forEventSourcedEntity(booking.slotId())
+                        .method(BookingSlotEntity::cancelBooking)
+                        .invoke(bookingId));
+
+        return HttpResponses.ok();
+    }
+
     // Retrieves all slots in which a given participant has the supplied status.
-    // Used to retrieve bookings and slots in which the participant is available
+    // Used to retrieve bookings and slots in which the participant is available.
+    // The optional `from` and `to` query parameters limit the result to a range
+    // of slot IDs. Answered from the participant's schedule entity.
     @Get("/slots/{participantId}/{status}")
     public SlotList slotsByStatus(String participantId, String status) {
-             return componentClient
-                    .forView()
-                    .method(ParticipantSlotsView::getSlotsByParticipantAndStatus)
-                    .invoke(new ParticipantSlotsView.ParticipantStatusInput(participantId, status));
+        var queryParams = requestContext().queryParams();
+        var from = queryParams.getString("from").orElse(null);
+        var to = queryParams.getString("to").orElse(null);
+        try {
+            if (from != null) SlotIds.toEpochHour(from);
+            if (to != null) SlotIds.toEpochHour(to);
+        } catch (DateTimeParseException e) {
+            throw HttpException.badRequest("Invalid slot range. Expected 'YYYY-MM-DD-HH'.");
+        }
 
+        return componentClient
+                .forEventSourcedEntity(participantId)
+                .method(ParticipantScheduleEntity::getSlotsByStatus)
+                .invoke(new ParticipantScheduleEntity.Commands.SlotsByStatus(status, from, to));
+    }
+
+    // Returns the participant's status in a single slot
+    @Get("/participants/{participantId}/status/{slotId}")
+    public SlotList slotStatus(String participantId, String slotId) {
+        try {
+            SlotIds.toEpochHour(slotId);
+        } catch (DateTimeParseException e) {
+            throw HttpException.badRequest("Invalid slotId format. Expected 'YYYY-MM-DD-HH'.");
+        }
+        return componentClient
+                .forEventSourcedEntity(participantId)
+                .method(ParticipantScheduleEntity::getSlotStatus)
+                .invoke(slotId);
+    }
 
+    // Pushes a participant's slots as server-sent events: every current slot
+    // first, then each slot row as its status changes.
+    @Get("/participants/{participantId}/slots/stream")
+    public HttpResponse streamSlots(String participantId) {
+        return HttpResponses.serverSentEvents(
+                componentClient
+                        .forView()
+                        .stream(ParticipantSlotsView::streamSlotsByParticipant)
+                        .source(participantId));
     }
 
-    // Returns the internal availability state for a given slot
+    // Returns the participants available and booked per type for every slot
+    // from `from` to `to`, both included, e.g. to render a week. Slots in
+    // which nobody has been marked available or booked are left out, they are
+    // found through the participant slots view and not read at all.
+    @Get("/availability")
+    public CompletionStage<AvailabilityMatrix> availabilityMatrix() {
+        var queryParams = requestContext().queryParams();
+        var from = queryParams.getString("from")
+                .orElseThrow(() -> HttpException.badRequest("Missing 'from' slot ID"));
+        var to = queryParams.getString("to")
+                .orElseThrow(() -> HttpException.badRequest("Missing 'to' slot ID"));
+        long fromHour, toHour;
+        try {
+            fromHour = SlotIds.toEpochHour(from);
+            toHour = SlotIds.toEpochHour(to);
+        } catch (DateTimeParseException e) {
+            throw HttpException.badRequest("Invalid slot range. Expected 'YYYY-MM-DD-HH'.");
+        }
+        if (toHour < fromHour || toHour - fromHour >= MAX_MATRIX_HOURS) {
+            throw HttpException.badRequest("Invalid slot range. At most " + MAX_MATRIX_HOURS + " hours can be requested.");
+        }
+
+        var usedSlots = componentClient
+                .forView()
+                .method(ParticipantSlotsView::getSlotsBetween)
+                .invoke(new ParticipantSlotsView.SlotRangeInput(from, to))
+                .slots().stream()
+                .map(ParticipantSlotsView.SlotRow::slotId)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        return Source.from(usedSlots)
+                .mapAsync(MATRIX_PARALLELISM, slotId -> componentClient
+                        .forEventSourcedEntity(slotId)
+                        .method(BookingSlotEntity::getSummary)
+                        .invokeAsync()
+                        .thenApply(summary -> Map.entry(slotId, summary)))
+                // e.g. every participant has been unmarked again
+                .filter(slot -> !slot.getValue().isEmpty())
+                .map(slot -> new MatrixCell(
+                        slot.getKey(), slot.getValue().available(), slot.getValue().booked(), slot.getValue().bookable()))
+                .runWith(Sink.seq(), materializer)
+                .thenApply(cells -> new AvailabilityMatrix(from, to, cells));
+    }
+
+    // Returns the internal availability state for a given slot. The response
+    // carries the slot's version as its ETag, a request with a matching
+    // If-None-Match header is answered with 304 Not Modified and no body.
     @Get("/availability/{slotId}")
-    public Timeslot getSlot(String slotId) {
+    public HttpResponse getSlot(String slotId) {
         try{
             validateSlotId(slotId);
         } catch(IllegalArgumentException e){
             throw HttpException.badRequest("slot id not a bad request");
 
         }
-        return componentClient
+        // Served by the local replica like the summary, clients that need the
+        // primary's state use /versioned?consistency=primary
+        var snapshot = componentClient
                 .forEventSourcedEntity(slotId)
-                .method(BookingSlotEntity::getSlot)
+                .method(BookingSlotEntity::getSlotLocal)
                 .invoke();
+        return conditionalResponse(snapshot.version(), snapshot.slot());
 
     }
 
+    // Returns the number of participants available and booked per type, and
+    // whether the slot can currently be booked. Supports If-None-Match like
+    // the full availability state.
+    @Get("/availability/{slotId}/summary")
+    public HttpResponse getSlotSummary(String slotId) {
+        validateSlotId(slotId);
+        var summary = componentClient
+                .forEventSourcedEntity(slotId)
+                .method(BookingSlotEntity::getSummary)
+                .invoke();
+        return conditionalResponse(summary.version(), summary);
+    }
+
+    // Returns the availability state together with its version. The `consistency`
+    // query parameter selects where it is read from: `local` (default) serves it
+    // from the nearest replica and may be stale, `primary` reads it from the
+    // primary region and is strongly consistent.
+    @Get("/availability/{slotId}/versioned")
+    public BookingSlotEntity.SlotSnapshot getSlotVersioned(String slotId) {
+        validateSlotId(slotId);
+        var consistency = requestContext().queryParams().getString("consistency").orElse("local");
+
+        var entity = componentClient.forEventSourcedEntity(slotId);
+        return switch (consistency.trim().toLowerCase()) {
+            case "local" -> entity.method(BookingSlotEntity::getSlotLocal).invoke();
+            case "primary" -> entity.method(BookingSlotEntity::getSlotFromPrimary).invoke();
+            default -> throw HttpException.badRequest("Invalid consistency. Expected 'local' or 'primary'.");
+        };
+    }
+
     // Indicates that the supplied participant is available for booking
     // within the indicated time slot
     @Post("/availability/{slotId}")
@@ -151,15 +371,118 @@ public class FlightEndpoint extends AbstractHttpEndpoint {
         return HttpResponses.ok();
     }
 
-    // Public API representation of a booking request
+    // Public API representation of a booking request. The airfield is optional,
+    // bookings without one are flown from the default airfield. With `waitlist`
+    // set, a booking whose participants are not all available waits for them
+    // and is booked automatically, bookings with a higher `priority` first.
+    // An aircraft or instructor ID that is left out or "*" lets the slot choose
+    // one that is available: any, or one of `aircraftIds`/`instructorIds` when
+    // given, picked by `selectionPolicy` (PREFERRED_FIRST or LEAST_UTILIZED).
+    // LEAST_UTILIZED ranks at most the first 20 candidates of each type.
     public record BookingRequest(
-            String studentId, String aircraftId, String instructorId, String bookingId) {
+            String studentId, String aircraftId, String instructorId, String bookingId, String airfieldId,
+            Boolean waitlist, Integer priority,
+            List<String> aircraftIds, List<String> instructorIds, String selectionPolicy) {
+
+        public BookingRequest withBookingId(String bookingId) {
+            return new BookingRequest(studentId, aircraftId, instructorId, bookingId, airfieldId, waitlist, priority,
+                    aircraftIds, instructorIds, selectionPolicy);
+        }
+
+        // The request with the participants the slot has chosen
+        public BookingRequest withParticipants(String aircraftId, String instructorId) {
+            return new BookingRequest(studentId, aircraftId, instructorId, bookingId, airfieldId, waitlist, priority,
+                    aircraftIds, instructorIds, selectionPolicy);
+        }
+
+        public boolean joinsWaitlist() {
+            return Boolean.TRUE.equals(waitlist);
+        }
+
+        public boolean autoAssigns() {
+            return isWildcard(aircraftId) || isWildcard(instructorId);
+        }
+
+        // The acceptable aircraft, an empty list accepts any
+        public List<String> aircraftCandidates() {
+            return candidates(aircraftId, aircraftIds);
+        }
+
+        public List<String> instructorCandidates() {
+            return candidates(instructorId, instructorIds);
+        }
+
+        private static boolean isWildcard(String participantId) {
+            return participantId == null || participantId.isBlank() || participantId.equals("*");
+        }
+
+        private static List<String> candidates(String participantId, List<String> preferences) {
+            if (!isWildcard(participantId)) {
+                return List.of(participantId);
+            }
+            return preferences == null ? List.of() : preferences;
+        }
+    }
+
+    // The slots of a range that have participants, in chronological order
+    public record AvailabilityMatrix(String from, String to, List<MatrixCell> slots) {
+    }
+
+    public record MatrixCell(
+            String slotId,
+            Map<ParticipantType, Integer> available,
+            Map<ParticipantType, Integer> booked,
+            boolean bookable) {
+    }
+
+    // Returned when a booking is accepted, and again for any retry of it
+    public record BookingReceipt(String bookingId, String slotId) {
     }
 
     // Public API representation of an availability mark/unmark request
     public record AvailabilityRequest(String participantId, String participantType) {
     }
 
+    // The booking ID identifies a booking across retries. It is taken from the
+    // request body, or else from the Idempotency-Key header. Requests with
+    // neither are treated as a new booking every time.
+    private String resolveBookingId(BookingRequest request) {
+        if (request.bookingId() != null && !request.bookingId().isBlank()) {
+            return request.bookingId();
+        }
+        return requestContext()
+                .requestHeader(IDEMPOTENCY_KEY_HEADER)
+                .map(HttpHeader::value)
+                .filter(key -> !key.isBlank())
+                .orElseGet(() -> UUID.randomUUID().toString());
+    }
+
+    private HttpResponse conditionalResponse(long version, Object body) {
+        var etag = ETag.create(EntityTag.create(Long.toString(version), false));
+        var ifNoneMatch = requestContext().requestHeader(IF_NONE_MATCH_HEADER).map(HttpHeader::value);
+        if (ifNoneMatch.isPresent() && matchesETag(ifNoneMatch.get(), etag.etag().tag())) {
+            return HttpResponse.create().withStatus(StatusCodes.NOT_MODIFIED).addHeader(etag);
+        }
+        return HttpResponses.ok(body).addHeader(etag);
+    }
+
+    // If-None-Match holds `*` or a list of entity tags, weak ones prefixed by W/
+    private static boolean matchesETag(String ifNoneMatch, String tag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            var value = candidate.strip();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("\"" + tag + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Validates that a slotId is in the correct 'YYYY-MM-DD-HH' format
      * and represents a time in the future.
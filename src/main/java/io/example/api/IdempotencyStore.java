@@ -0,0 +1,63 @@
+package io.example.api;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// A bounded store of recently seen idempotency keys and the response that was
+// returned for them. Entries expire after the TTL and the least recently used
+// entry is evicted once the store is full.
+public class IdempotencyStore<V> {
+
+    private record Entry<V>(V value, Instant expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Clock clock;
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    public IdempotencyStore(int maxEntries, Duration ttl, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+    }
+
+    public synchronized Optional<V> get(String key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (!clock.instant().isBefore(entry.expiresAt())) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value());
+    }
+
+    // Stores the value unless a live entry already exists for the key, and
+    // returns whichever value is now stored.
+    public synchronized V putIfAbsent(String key, V value) {
+        return get(key).orElseGet(() -> {
+            entries.put(key, new Entry<>(value, clock.instant().plus(ttl)));
+            return value;
+        });
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,21 @@
+package io.example.api;
+
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import io.example.application.OperationalMetrics;
+
+import java.util.Map;
+
+// Exposes the operational counters of this service instance. Only reachable
+// from the same host, e.g. for a metrics scraper running alongside the service.
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.LOCALHOST))
+@HttpEndpoint("/metrics")
+public class MetricsEndpoint extends AbstractHttpEndpoint {
+
+    @Get
+    public Map<String, Long> metrics() {
+        return OperationalMetrics.snapshot();
+    }
+}
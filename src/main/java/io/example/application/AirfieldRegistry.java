@@ -0,0 +1,49 @@
+package io.example.application;
+
+import io.example.domain.Airfield;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// The airfields we operate from. Bookings reference an airfield by ID; when a
+// booking does not name one, the default airfield is used.
+public class AirfieldRegistry {
+
+    public static final String DEFAULT_AIRFIELD_ID = "london";
+
+    private static final AirfieldRegistry DEFAULT = new AirfieldRegistry(List.of(
+            new Airfield("london", "London", 51.5072, -0.1276),
+            new Airfield("london-city", "London City", 51.5048, 0.0495),
+            new Airfield("biggin-hill", "London Biggin Hill", 51.3308, 0.0325),
+            /* use for bad conditions */
+            new Airfield("mount-washington", "Mount Washington", 44.2705, -71.3033)));
+
+    private final Map<String, Airfield> airfields = new LinkedHashMap<>();
+
+    public AirfieldRegistry(Collection<Airfield> airfields) {
+        airfields.forEach(a -> this.airfields.put(a.id(), a));
+    }
+
+    public static AirfieldRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Optional<Airfield> find(String airfieldId) {
+        return Optional.ofNullable(airfields.get(airfieldId));
+    }
+
+    // Resolves an airfield, falling back to the default airfield when no ID is supplied
+    public Airfield resolve(String airfieldId) {
+        if (airfieldId == null || airfieldId.isBlank()) {
+            return airfields.get(DEFAULT_AIRFIELD_ID);
+        }
+        return find(airfieldId.trim())
+                .orElseThrow(() -> new IllegalArgumentException("Unknown airfield " + airfieldId));
+    }
+
+    public Collection<Airfield> all() {
+        return airfields.values();
+    }
+}
@@ -0,0 +1,48 @@
+package io.example.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.example.domain.BookingEvent;
+import io.example.domain.Participant;
+
+// This class keeps the booking index up to date by consuming the booked and
+// canceled events of the booking slot entity. Availability events don't
+// affect bookings and are ignored.
+@ComponentId("booking-index-consumer")
+@Consume.FromEventSourcedEntity(BookingSlotEntity.class)
+public class BookingIndexConsumer extends Consumer {
+
+    private final ComponentClient client;
+
+    public BookingIndexConsumer(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect onEvent(BookingEvent event) {
+        return switch (event) {
+            case BookingEvent.ParticipantBooked evt -> effects().asyncDone(
+                    client.forKeyValueEntity(evt.bookingId())
+                            .method(BookingIndexEntity::recordParticipant)
+                            .invokeAsync(new BookingIndexEntity.Commands.RecordParticipant(
+                                    evt.bookingId(), evt.slotId(), new Participant(evt.participantId(), evt.participantType())
+                            )));
+
+            case BookingEvent.ParticipantCanceled evt -> effects().asyncDone(
+                    client.forKeyValueEntity(evt.bookingId())
+                            .method(BookingIndexEntity::markCanceled)
+                            .invokeAsync());
+
+            case BookingEvent.ParticipantMarkedAvailable evt -> effects().ignore();
+            case BookingEvent.ParticipantUnmarkedAvailable evt -> effects().ignore();
+            case BookingEvent.ParticipantsHeld evt -> effects().ignore();
+            case BookingEvent.HoldReleased evt -> effects().ignore();
+            case BookingEvent.WaitlistJoined evt -> effects().ignore();
+            case BookingEvent.WaitlistMatched evt -> effects().ignore();
+            case BookingEvent.WaitlistLeft evt -> effects().ignore();
+            // Index entries of expired slots are removed by the retention sweeper
+            case BookingEvent.SlotExpired evt -> effects().ignore();
+        };
+    }
+}
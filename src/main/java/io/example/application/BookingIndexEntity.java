@@ -0,0 +1,65 @@
+package io.example.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import io.example.domain.Participant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A secondary index from a booking ID to the slot it was made in and the
+// participants it holds. The entity is keyed by booking ID and maintained by
+// the BookingIndexConsumer from the booking slot events.
+@ComponentId("booking-index")
+public class BookingIndexEntity extends KeyValueEntity<BookingIndexEntity.State> {
+
+    public Effect<Done> recordParticipant(Commands.RecordParticipant cmd) {
+        // A booking ID that is reused after a cancel, or for another slot, starts
+        // a new entry, so a later cancel finds the new slot and participants
+        var current = currentState();
+        var state = current == null || current.canceled() || !current.slotId().equals(cmd.slotId())
+                ? new State(cmd.bookingId(), cmd.slotId(), List.of(), false)
+                : current;
+        if (state.participants().contains(cmd.participant())) {
+            return effects().reply(Done.done());
+        }
+        var participants = new ArrayList<>(state.participants());
+        participants.add(cmd.participant());
+        return effects()
+                .updateState(new State(state.bookingId(), state.slotId(), participants, false))
+                .thenReply(Done.done());
+    }
+
+    public Effect<Done> markCanceled() {
+        if (currentState() == null || currentState().canceled()) {
+            return effects().reply(Done.done());
+        }
+        return effects()
+                .updateState(currentState().asCanceled())
+                .thenReply(Done.done());
+    }
+
+    public Effect<Done> delete() {
+        return effects().deleteEntity().thenReply(Done.done());
+    }
+
+    public Effect<State> getBooking() {
+        if (currentState() == null) {
+            return effects().error("Booking not found");
+        }
+        return effects().reply(currentState());
+    }
+
+    public record State(String bookingId, String slotId, List<Participant> participants, boolean canceled) {
+        public State asCanceled() {
+            return new State(bookingId, slotId, participants, true);
+        }
+    }
+
+    public sealed interface Commands {
+        record RecordParticipant(String bookingId, String slotId, Participant participant)
+                implements Commands {
+        }
+    }
+}
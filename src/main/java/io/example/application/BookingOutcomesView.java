@@ -0,0 +1,36 @@
+package io.example.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import io.example.domain.FlightBookingState;
+import io.example.workflows.FlightBookingWorkflow;
+
+// Tracks the outcome of each booking workflow so that clients can be pushed
+// the result once it is known instead of polling the slot state.
+@ComponentId("view-booking-outcomes")
+public class BookingOutcomesView extends View {
+
+    @Consume.FromWorkflow(FlightBookingWorkflow.class)
+    public static class BookingOutcomesUpdater extends TableUpdater<BookingOutcome> {
+
+        public Effect<BookingOutcome> onUpdate(FlightBookingState state) {
+            return effects().updateRow(new BookingOutcome(
+                    state.request().bookingId(),
+                    state.slotId(),
+                    state.status().name()
+            ));
+        }
+    }
+
+    public record BookingOutcome(String bookingId, String slotId, String status) {
+    }
+
+    // Emits the current outcome row for the booking and then every update to it
+    @Query(value = "SELECT * FROM booking_outcomes WHERE bookingId = :bookingId", streamUpdates = true)
+    public QueryStreamEffect<BookingOutcome> streamOutcome(String bookingId) {
+        return queryStreamResult();
+    }
+}
@@ -6,8 +6,14 @@ import akka.javasdk.eventsourcedentity.EventSourcedEntity;
 import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
 import io.example.domain.BookingEvent;
 import io.example.domain.Participant;
+import io.example.domain.SelectionPolicy;
+import io.example.domain.SlotIds;
 import io.example.domain.Timeslot;
-import java.util.HashSet;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,20 +23,42 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
 
     private final String entityId;
     private static final Logger logger = LoggerFactory.getLogger(BookingSlotEntity.class);
+    private static final int MAX_WAITLIST_SIZE = 50;
+
+    // Commands that would not have changed the state and were not persisted
+    public static final String SUPPRESSED_WRITES = "booking-slot.suppressed-writes";
 
     public BookingSlotEntity(EventSourcedEntityContext context) {
         this.entityId = context.entityId();
     }
 
     public Effect<Done> markSlotAvailable(Command.MarkSlotAvailable cmd) {
+        // Retries and repeated requests leave the state as it is, so nothing is persisted
+        if (currentState().isWaiting(cmd.participant().id(), cmd.participant().participantType())) {
+            OperationalMetrics.increment(SUPPRESSED_WRITES);
+            return effects().reply(Done.done());
+        }
         var event= new BookingEvent.ParticipantMarkedAvailable(
                 entityId, cmd.participant().id(), cmd.participant().participantType());
+        // The new participant may complete bookings on the waitlist, those are
+        // booked together with the availability change
+        var events = new ArrayList<BookingEvent>();
+        events.add(event);
+        events.addAll(waitlistBookings(List.of(cmd.participant())));
         return effects()
-                .persist(event)
+                .persistAll(events)
                 .thenReply(newState -> Done.done());
     }
 
     public Effect<Done> unmarkSlotAvailable(Command.UnmarkSlotAvailable cmd) {
+        // A held participant isn't available, but would be made available again
+        // when the hold is released, so the unmark is persisted for the hold
+        var id = cmd.participant().id();
+        var type = cmd.participant().participantType();
+        if (!currentState().isWaiting(id, type) && !currentState().isHeld(id, type)) {
+            OperationalMetrics.increment(SUPPRESSED_WRITES);
+            return effects().reply(Done.done());
+        }
         var event= new BookingEvent.ParticipantUnmarkedAvailable(
                 entityId, cmd.participant().id(), cmd.participant().participantType()
         );
@@ -42,6 +70,7 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
     // NOTE: booking a slot should produce 3
     // `ParticipantBooked` events
     public Effect<Done> bookSlot(Command.BookReservation cmd) {
+        traceCommand(cmd.bookingId());
         if(currentState().isBookable(cmd.studentId, cmd.aircraftId, cmd.instructorId)){
             var studentEvent = new BookingEvent.ParticipantBooked(entityId, cmd.studentId(), Participant.ParticipantType.STUDENT, cmd.bookingId());
             var aircraftEvent = new BookingEvent.ParticipantBooked(entityId, cmd.aircraftId(), Participant.ParticipantType.AIRCRAFT, cmd.bookingId());
@@ -54,55 +83,222 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
         else{
             return effects().error("Slot is not bookable. Not all participants are available.");
         }
+    }
+
+    // Tentatively reserves the three participants of a booking until the
+    // deadline. Fails right away if any of them is not available.
+    public Effect<Done> holdSlot(Command.HoldReservation cmd) {
+        var reservation = cmd.reservation();
+        traceCommand(reservation.bookingId());
+        if (currentState().findHold(reservation.bookingId()).isPresent()) {
+            return effects().reply(Done.done());
+        }
+        if (!currentState().isBookable(reservation.studentId(), reservation.aircraftId(), reservation.instructorId())) {
+            return effects().error("Slot is not bookable. Not all participants are available.");
+        }
+        var event = new BookingEvent.ParticipantsHeld(
+                SlotIds.toEpochHour(entityId),
+                reservation.studentId(),
+                reservation.aircraftId(),
+                reservation.instructorId(),
+                reservation.bookingId(),
+                cmd.deadlineEpochMillis());
+        return effects()
+                .persist(event)
+                .thenReply(newState -> Done.done());
+    }
+
+    // Holds the student together with an aircraft and an instructor chosen by
+    // the entity from those available, so that a booking open to several
+    // participants succeeds in one attempt. Replies with the chosen participants.
+    public Effect<Command.BookReservation> holdAssigned(Command.HoldAssigned cmd) {
+        traceCommand(cmd.bookingId());
+        var existing = currentState().findHold(cmd.bookingId());
+        if (existing.isPresent()) {
+            var hold = existing.get();
+            return effects().reply(new Command.BookReservation(
+                    hold.studentId(), hold.aircraftId(), hold.instructorId(), hold.bookingId()));
+        }
+        var policy = cmd.policy() == null ? SelectionPolicy.PREFERRED_FIRST : cmd.policy();
+        var utilization = cmd.utilization() == null ? Map.<String, Integer>of() : cmd.utilization();
+        var aircraft = currentState().selectAvailable(
+                Participant.ParticipantType.AIRCRAFT, cmd.aircraftIds(), policy, utilization);
+        var instructor = currentState().selectAvailable(
+                Participant.ParticipantType.INSTRUCTOR, cmd.instructorIds(), policy, utilization);
+        if (!currentState().isWaiting(cmd.studentId(), Participant.ParticipantType.STUDENT)
+                || aircraft.isEmpty() || instructor.isEmpty()) {
+            return effects().error("Slot is not bookable. No matching participants are available.");
+        }
+        var reservation = new Command.BookReservation(cmd.studentId(), aircraft.get(), instructor.get(), cmd.bookingId());
+        var event = new BookingEvent.ParticipantsHeld(
+                SlotIds.toEpochHour(entityId),
+                reservation.studentId(),
+                reservation.aircraftId(),
+                reservation.instructorId(),
+                reservation.bookingId(),
+                cmd.deadlineEpochMillis());
+        return effects()
+                .persist(event)
+                .thenReply(newState -> reservation);
+    }
+
+    // Turns a hold into a booking. Fails if there is no hold for the booking or
+    // its deadline has passed.
+    public Effect<Done> confirmHold(String bookingId) {
+        traceCommand(bookingId);
+        var hold = currentState().findHold(bookingId);
+        if (hold.isEmpty() || hold.get().deadlineEpochMillis() < System.currentTimeMillis()) {
+            return effects().error("No active hold for booking " + bookingId);
+        }
+        var events = new ArrayList<BookingEvent>();
+        events.add(new BookingEvent.HoldReleased(SlotIds.toEpochHour(entityId), bookingId));
+        events.addAll(bookedEvents(hold.get().studentId(), hold.get().aircraftId(), hold.get().instructorId(), bookingId));
+        return effects()
+                .persistAll(events)
+                .thenReply(newState -> Done.done());
+    }
 
+    // Ends a hold and makes its participants available again. With
+    // `onlyIfExpired`, holds that are still within their deadline are kept.
+    // Waiting bookings that the released participants complete are booked
+    // together with the release.
+    public Effect<Done> releaseHold(Command.ReleaseHold cmd) {
+        var hold = currentState().findHold(cmd.bookingId());
+        if (hold.isEmpty()
+                || (cmd.onlyIfExpired() && hold.get().deadlineEpochMillis() > System.currentTimeMillis())) {
+            return effects().reply(Done.done());
+        }
+        var released = hold.get().releasedParticipants();
+        var events = new ArrayList<BookingEvent>();
+        events.add(new BookingEvent.HoldReleased(SlotIds.toEpochHour(entityId), cmd.bookingId()));
+        events.addAll(waitlistBookings(released));
+        return effects()
+                .persistAll(events)
+                .thenReply(newState -> Done.done());
+    }
+
+    // Queues a booking that could not be booked. If the participants have become
+    // available in the meantime, it is booked right away instead.
+    public Effect<WaitlistResult> joinWaitlist(Command.JoinWaitlist cmd) {
+        var reservation = cmd.reservation();
+        if (currentState().isBookable(reservation.studentId(), reservation.aircraftId(), reservation.instructorId())) {
+            return effects()
+                    .persistAll(bookedEvents(reservation.studentId(), reservation.aircraftId(), reservation.instructorId(), reservation.bookingId()))
+                    .thenReply(newState -> WaitlistResult.BOOKED);
+        }
+        if (currentState().isWaitlisted(reservation.bookingId())) {
+            return effects().reply(WaitlistResult.WAITLISTED);
+        }
+        if (currentState().waitlistSize() >= MAX_WAITLIST_SIZE) {
+            return effects().error("The waitlist for this slot is full.");
+        }
+        var event = new BookingEvent.WaitlistJoined(
+                SlotIds.toEpochHour(entityId),
+                reservation.studentId(),
+                reservation.aircraftId(),
+                reservation.instructorId(),
+                reservation.bookingId(),
+                cmd.priority());
+        return effects()
+                .persist(event)
+                .thenReply(newState -> WaitlistResult.WAITLISTED);
     }
 
     // NOTE: canceling a booking should produce 3
-    // `ParticipantCanceled` events
+    // `ParticipantCanceled` events, one for each booked participant
     public Effect<Done> cancelBooking(String bookingId) {
+        traceCommand(bookingId);
         var booking = currentState().findBooking(bookingId);
+        if(booking.isEmpty() && currentState().isWaitlisted(bookingId)){
+            return effects()
+                    .persist(new BookingEvent.WaitlistLeft(SlotIds.toEpochHour(entityId), bookingId))
+                    .thenReply(newState -> Done.done());
+        }
         if(booking.isEmpty()){
             return effects().error("No booking to cancel");
         }
         else{
-            /// Create the 3 ParticipantCanceled events directly
-            var studentEvent = new BookingEvent.ParticipantCanceled(
-                    entityId,
-                    booking.get(0).participant().id(),
-                    booking.get(0).participant().participantType(),
-                    bookingId);
-
-            var aircraftEvent = new BookingEvent.ParticipantCanceled(
-                    entityId,
-                    booking.get(1).participant().id(),
-                    booking.get(1).participant().participantType(),
-                    bookingId);
-
-            var instructorEvent = new BookingEvent.ParticipantCanceled(
-                    entityId,
-                    booking.get(2).participant().id(),
-                    booking.get(2).participant().participantType(),
-                    bookingId);
+            // One event per booking entry, so the result doesn't depend on the
+            // iteration order of the underlying set
+            // Canceled participants are not made available again, so the cancel
+            // can't complete any waiting booking
+            var events = booking.stream()
+                    .map(b -> new BookingEvent.ParticipantCanceled(
+                            entityId,
+                            b.participant().id(),
+                            b.participant().participantType(),
+                            bookingId))
+                    .toList();
 
             return effects()
-                    .persist(studentEvent, aircraftEvent, instructorEvent)
+                    .persistAll(events)
                     .thenReply(newState -> Done.done());
 
         }
+    }
+
+    // Marks the runtime's span of the command with the slot and booking it
+    // works on. That span covers the command including its persistence.
+    private void traceCommand(String bookingId) {
+        TraceSpans.annotateCurrent(entityId, bookingId);
+    }
 
+    // The events that book every waiting booking that can be satisfied, in
+    // priority order, once the given participant (if any) is available
+    private List<BookingEvent> waitlistBookings(List<Participant> newlyAvailable) {
+        var events = new ArrayList<BookingEvent>();
+        for (var entry : currentState().matchWaitlist(newlyAvailable)) {
+            logger.info("Booking waitlisted booking {} in slot {}", entry.bookingId(), entityId);
+            events.addAll(bookedEvents(entry.studentId(), entry.aircraftId(), entry.instructorId(), entry.bookingId()));
+            events.add(new BookingEvent.WaitlistMatched(SlotIds.toEpochHour(entityId), entry.bookingId()));
+        }
+        return events;
+    }
 
+    private List<BookingEvent> bookedEvents(String studentId, String aircraftId, String instructorId, String bookingId) {
+        return List.of(
+                new BookingEvent.ParticipantBooked(entityId, studentId, Participant.ParticipantType.STUDENT, bookingId),
+                new BookingEvent.ParticipantBooked(entityId, aircraftId, Participant.ParticipantType.AIRCRAFT, bookingId),
+                new BookingEvent.ParticipantBooked(entityId, instructorId, Participant.ParticipantType.INSTRUCTOR, bookingId));
+    }
 
+    // Deletes a slot that is past the retention horizon. The state at the time
+    // of expiry is returned so that it can be archived.
+    public Effect<ExpireResult> expire() {
+        if (isDeleted()) {
+            return effects().reply(new ExpireResult(false, currentState()));
+        }
+        var state = currentState();
+        return effects()
+                .persist(new BookingEvent.SlotExpired(SlotIds.toEpochHour(entityId)))
+                .deleteEntity()
+                .thenReply(newState -> new ExpireResult(true, state));
     }
 
     public ReadOnlyEffect<Timeslot> getSlot() {
         return effects().reply(currentState());
     }
 
+    // Counts instead of the full participant lists, for clients polling the slot
+    public ReadOnlyEffect<SlotSummary> getSummary() {
+        return effects().reply(SlotSummary.of(currentState(), commandContext().sequenceNumber()));
+    }
+
+    // Read-only commands are served by the replica in the region that receives
+    // the call, so under replicated-read this may lag behind the primary.
+    public ReadOnlyEffect<SlotSnapshot> getSlotLocal() {
+        return effects().reply(new SlotSnapshot(currentState(), commandContext().sequenceNumber()));
+    }
+
+    // Non read-only commands are always routed to the primary region, so this
+    // reflects every event persisted for the slot at the time of the call.
+    public Effect<SlotSnapshot> getSlotFromPrimary() {
+        return effects().reply(new SlotSnapshot(currentState(), commandContext().sequenceNumber()));
+    }
+
     @Override
     public Timeslot emptyState() {
-        return new Timeslot(
-                // NOTE: these are just estimates for capacity based on it being a sample
-                HashSet.newHashSet(10), HashSet.newHashSet(10));
+        return Timeslot.empty();
     }
 
     @Override
@@ -118,6 +314,18 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
             case BookingEvent.ParticipantCanceled evt ->
                 // This method removes all participants for the bookingId
                     currentState().cancelBooking(evt.bookingId());
+            case BookingEvent.ParticipantsHeld evt ->
+                    currentState().hold(evt);
+            case BookingEvent.HoldReleased evt ->
+                    currentState().releaseHold(evt.bookingId());
+            case BookingEvent.WaitlistJoined evt ->
+                    currentState().joinWaitlist(evt);
+            case BookingEvent.WaitlistMatched evt ->
+                    currentState().leaveWaitlist(evt.bookingId());
+            case BookingEvent.WaitlistLeft evt ->
+                    currentState().leaveWaitlist(evt.bookingId());
+            case BookingEvent.SlotExpired evt ->
+                    currentState();
 
 
         };
@@ -126,6 +334,48 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
 
     };
 
+    // The slot state together with the sequence number of the last event applied to it
+    public record SlotSnapshot(Timeslot slot, long version) {
+    }
+
+    // Participants available and booked per type. `bookable` is true if at least
+    // one participant of every type is available.
+    public record SlotSummary(
+            Map<Participant.ParticipantType, Integer> available,
+            Map<Participant.ParticipantType, Integer> booked,
+            int held,
+            int waitlisted,
+            boolean bookable,
+            long version) {
+
+        public boolean isEmpty() {
+            return available.values().stream().allMatch(count -> count == 0)
+                    && booked.values().stream().allMatch(count -> count == 0)
+                    && held == 0
+                    && waitlisted == 0;
+        }
+
+        static SlotSummary of(Timeslot slot, long version) {
+            var available = new EnumMap<Participant.ParticipantType, Integer>(Participant.ParticipantType.class);
+            var booked = new EnumMap<Participant.ParticipantType, Integer>(Participant.ParticipantType.class);
+            for (Participant.ParticipantType type : Participant.ParticipantType.values()) {
+                available.put(type, slot.availableCount(type));
+                booked.put(type, slot.bookedCount(type));
+            }
+            return new SlotSummary(available, booked, slot.holdCount(), slot.waitlistSize(),
+                    slot.hasAvailableOfEveryType(), version);
+        }
+    }
+
+    public enum WaitlistResult {
+        BOOKED,
+        WAITLISTED
+    }
+
+    // `reclaimed` is false if the slot had already expired
+    public record ExpireResult(boolean reclaimed, Timeslot slot) {
+    }
+
     public sealed interface Command {
         record MarkSlotAvailable(Participant participant) implements Command {
         }
@@ -137,5 +387,29 @@ public class BookingSlotEntity extends EventSourcedEntity<Timeslot, BookingEvent
                 String studentId, String aircraftId, String instructorId, String bookingId)
                 implements Command {
         }
+
+        record HoldReservation(BookReservation reservation, long deadlineEpochMillis) implements Command {
+        }
+
+        record ReleaseHold(String bookingId, boolean onlyIfExpired) implements Command {
+        }
+
+        // Empty aircraft or instructor IDs accept any available one. Otherwise they
+        // list the acceptable participants, most preferred first. `utilization`
+        // holds the booked hours of candidates, for the LEAST_UTILIZED policy.
+        record HoldAssigned(
+                String studentId,
+                List<String> aircraftIds,
+                List<String> instructorIds,
+                String bookingId,
+                long deadlineEpochMillis,
+                SelectionPolicy policy,
+                Map<String, Integer> utilization)
+                implements Command {
+        }
+
+        // Waiting bookings with a higher priority are booked first
+        record JoinWaitlist(BookReservation reservation, int priority) implements Command {
+        }
     }
 }
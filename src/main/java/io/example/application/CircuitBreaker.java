@@ -0,0 +1,102 @@
+package io.example.application;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+// Stops calling a failing dependency for a while. After `failureThreshold`
+// consecutive failures the breaker opens and calls fail fast with an
+// OpenException. Once `openDuration` has passed, a single trial call is let
+// through: if it succeeds the breaker closes again, otherwise it re-opens.
+// The state is published to OperationalMetrics under `<name>.state`.
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static class OpenException extends RuntimeException {
+        public OpenException(String name) {
+            super("Circuit breaker " + name + " is open");
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Clock clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+        publish();
+    }
+
+    public <T> T call(Supplier<T> body) {
+        acquire();
+        T result;
+        try {
+            result = body.get();
+        } catch (RuntimeException e) {
+            onFailure();
+            throw e;
+        }
+        onSuccess();
+        return result;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private synchronized void acquire() {
+        if (state == State.OPEN && !clock.instant().isBefore(openedAt.plus(openDuration))) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            publish();
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+            OperationalMetrics.increment(name + ".rejected");
+            throw new OpenException(name);
+        }
+        if (state == State.HALF_OPEN) {
+            trialInFlight = true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            publish();
+        }
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                OperationalMetrics.increment(name + ".opened");
+            }
+            state = State.OPEN;
+            openedAt = clock.instant();
+            publish();
+        }
+    }
+
+    private void publish() {
+        OperationalMetrics.set(name + ".state", state.ordinal());
+    }
+}
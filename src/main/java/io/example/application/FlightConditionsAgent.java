@@ -2,20 +2,18 @@ package io.example.application;
 import akka.javasdk.JsonSupport;
 import akka.javasdk.agent.Agent;
 import akka.javasdk.agent.JsonParsingException;
+import akka.javasdk.agent.MemoryProvider;
 import akka.javasdk.annotations.Component;
+import akka.javasdk.annotations.Description;
 import akka.javasdk.annotations.FunctionTool;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.example.domain.Airfield;
+import io.opentelemetry.api.trace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
 import java.util.List;
 
 /*
@@ -37,34 +35,51 @@ public class FlightConditionsAgent extends Agent {
     public interface WeatherService {
         String fetchForecast(String url);
     }
-    private final WeatherService weatherService;
+
+    private static final Duration WEATHER_TIMEOUT = Duration.ofSeconds(10);
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(WEATHER_TIMEOUT)
+            .build();
+
+    public static final WeatherService HTTP_WEATHER_SERVICE = url -> {
+        try {
+            var request = HttpRequest.newBuilder()
+                    .uri(java.net.URI.create(url))
+                    .timeout(WEATHER_TIMEOUT)
+                    .GET().build();
+            var response = HTTP_CLIENT.send(request, java.net.http.HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("Weather API responded with status " + response.statusCode());
+            }
+            return response.body();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) { throw new RuntimeException(e); }
+    };
+
+    // Agent instances are created per request, so the forecast cache is shared
+    // between them to make sure each region is only fetched once per TTL.
+    private static final ForecastCache SHARED_FORECASTS = new ForecastCache(HTTP_WEATHER_SERVICE);
+
+    private final ForecastCache forecasts;
+    private final AirfieldRegistry airfields = AirfieldRegistry.getDefault();
 
 //    for mock tests
     public FlightConditionsAgent(WeatherService weatherService) {
-        this.weatherService = weatherService;
+        this.forecasts = new ForecastCache(weatherService);
     }
 
 //    default constructor
     public FlightConditionsAgent() {
-        this.weatherService = url -> {
-            try {
-                var client = HttpClient.newHttpClient();
-                var request = HttpRequest.newBuilder()
-                        .uri(java.net.URI.create(url))
-                        .GET().build();
-                return client.send(request, java.net.http.HttpResponse.BodyHandlers.ofString()).body();
-            } catch (Exception e) { throw new RuntimeException(e); }
-        };
-    }
-
-    /* use for bad conditions */
-//    private static final String LATITUDE = "44.2705";
-//    private static final String LONGITUDE = "-71.3033";
-    /* use for good conditions */
-    private static final String LATITUDE = "51.5072";
-    private static final String LONGITUDE = "-0.1276";
+        this.forecasts = SHARED_FORECASTS;
+    }
+
     private static final Logger log = LoggerFactory.getLogger(FlightConditionsAgent.class);
 
+    // The slot to evaluate and the airfield the session is flown from
+    public record WeatherQuery(String timeSlotId, String airfieldId) {
+    }
+
 
     public record ConditionsReport(
             String timeSlotId,
@@ -92,7 +107,7 @@ public class FlightConditionsAgent extends Agent {
 
     private static final String SYSTEM_MESSAGE = """
             You are an agent responsible for evaluating flight conditions... You have a Function Tool which you have to use to
-            retrieve the weather for given timeSlotId. Always call the getWeatherForecast tool to retrieve the weather for the given timeSlotId before deciding.
+            retrieve the weather for given timeSlotId and airfieldId. Always call the getWeatherForecast tool to retrieve the weather for the given timeSlotId and airfieldId before deciding.
             Do not answer based only on your own knowledge; you must use the tool.” If you receive a json object:
              you need to check the following parameters are within the defined levels:
             - visibility must be above 4km
@@ -104,6 +119,8 @@ public class FlightConditionsAgent extends Agent {
             
             if the response from the Function Tool is a string that says "Forecast not available for this timeslot". Then by default return "true" for this case.
             
+            If the json object has "stale": true, the weather service is unavailable and it is the last known forecast for the hour, "forecastAgeMinutes" old. Evaluate it the same way.
+            
             Makesure to populate the report with the values you receive from the tool.
             
             * MANDATORY OUTPUT FORMAT: *
@@ -112,9 +129,15 @@ public class FlightConditionsAgent extends Agent {
             """.formatted(ConditionsReport.getSample());
 
 
-    public Effect<ConditionsReport> query(String timeSlotId) {
-        return effects().systemMessage(SYSTEM_MESSAGE)
-                .userMessage("Validate the weather conditions for timeslot:" + timeSlotId + "Always call the getWeatherForecast tool to retrieve the weather for the given timeSlotId before deciding.\n" +
+    // Each evaluation stands on its own, so the conversation is neither read from
+    // nor written to session memory. This keeps an evaluation free of persistence.
+    public Effect<ConditionsReport> query(WeatherQuery query) {
+        var timeSlotId = query.timeSlotId();
+        var airfieldId = airfields.resolve(query.airfieldId()).id();
+        return effects()
+                .memory(MemoryProvider.none())
+                .systemMessage(SYSTEM_MESSAGE)
+                .userMessage("Validate the weather conditions for timeslot:" + timeSlotId + " at airfieldId:" + airfieldId + ". Always call the getWeatherForecast tool to retrieve the weather for the given timeSlotId and airfieldId before deciding.\n" +
                         "Do not answer based only on your own knowledge")
                 .responseAs(ConditionsReport.class)
                 .onFailure(throwable -> {
@@ -139,35 +162,28 @@ public class FlightConditionsAgent extends Agent {
      * suitable weather
      * conditions and poor weather conditions from this tool function for testing.
      */
-    @FunctionTool(description = "Queries the weather conditions as they are forecasted based on the time slot ID of the training session booking")
-     public String getWeatherForecast(String timeSlotId) {
-        String apiKey = System.getenv("GOOGLE_AI_GEMINI_API_KEY");
-        String url = String.format("https://weather.googleapis.com/v1/forecast/hours:lookup?key=%s&location.latitude=%s&location.longitude=%s", apiKey, LATITUDE, LONGITUDE );
-        try{
-            String response = this.weatherService.fetchForecast(url);
-
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            WeatherResponse weatherResponse = mapper.readValue(response, WeatherResponse.class);
-
-
-            for (ForecastHour hour : weatherResponse.forecastHours) {
-                String startTimeApi = hour.interval.startTime;
-                Instant timestamp = Instant.parse(startTimeApi);
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH").withZone(ZoneOffset.UTC);
-                String formattedStartTime = formatter.format(timestamp);
-
-                if (formattedStartTime.equals(timeSlotId) ) {
-                    return mapper.writeValueAsString(hour) ;
-                }
+    @FunctionTool(description = "Queries the weather conditions as they are forecasted based on the time slot ID of the training session booking and the airfield it is flown from")
+    public String getWeatherForecast(
+            @Description("The time slot ID in the format YYYY-MM-DD-HH") String timeSlotId,
+            @Description("The ID of the airfield the training session is flown from") String airfieldId) {
+        // Runs inside the agent's tool call, so this span sits in the Gemini tool-call loop
+        return TraceSpans.inSpan(context().tracing(), "FlightConditionsAgent.getWeatherForecast", timeSlotId, null, () -> {
+            Span.current().setAttribute("weather.airfield_id", String.valueOf(airfieldId));
+            try {
+                Airfield airfield = airfields.resolve(airfieldId);
+                return forecasts.forecastFor(airfield, timeSlotId)
+                        .orElse("Forecast not available for this timeslot");
             }
-            return "Forecast not available for this timeslot";
-
-        }
-        catch(Exception e) {
-            return "{\"error\": \"Failed to retrieve weather data: " + e.getMessage() + "\"}";
-        }
+            catch(Exception e) {
+                Span.current().recordException(e);
+                return "{\"error\": \"Failed to retrieve weather data: " + e.getMessage() + "\"}";
+            }
+        });
+    }
 
+    // Looks up the forecast at the default airfield
+    public String getWeatherForecast(String timeSlotId) {
+        return getWeatherForecast(timeSlotId, AirfieldRegistry.DEFAULT_AIRFIELD_ID);
     }
 
 
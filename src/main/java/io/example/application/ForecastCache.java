@@ -0,0 +1,208 @@
+package io.example.application;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.example.domain.Airfield;
+import io.example.domain.GeoCell;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caches hourly forecasts per geo-grid cell. Airfields close together fall into
+// the same cell and share one fetch and one parsed forecast. Concurrent lookups
+// for a cell that is being loaded wait for that load instead of fetching again.
+//
+// Fetches go through a circuit breaker, so an unavailable weather API fails
+// fast instead of every lookup waiting for the HTTP timeout. When a fetch
+// fails, the last forecast fetched for the hour is served instead, marked as
+// stale together with its age.
+public class ForecastCache {
+    private static final Logger log = LoggerFactory.getLogger(ForecastCache.class);
+
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.5;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+    // How far ahead a lookup returns hourly forecasts, slots beyond have none
+    public static final Duration FORECAST_HORIZON = Duration.ofHours(24);
+
+    public static final String BREAKER_NAME = "weather.breaker";
+    public static final String LOOKUPS = "weather.forecast.lookups";
+    public static final String FALLBACKS = "weather.forecast.stale-fallbacks";
+    private static final int BREAKER_FAILURE_THRESHOLD = 3;
+    private static final Duration BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+
+    // The base URL can be pointed at a local stub of the weather API, e.g. for benchmarks
+    public static final String BASE_URL_PROPERTY = "weather.api.base-url";
+    public static final String BASE_URL_ENV = "WEATHER_API_BASE_URL";
+    private static final String DEFAULT_BASE_URL = "https://weather.googleapis.com";
+    private static final String FORECAST_PATH =
+            "/v1/forecast/hours:lookup?key=%s&location.latitude=%s&location.longitude=%s";
+    private static final DateTimeFormatter SLOT_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd-HH").withZone(ZoneOffset.UTC);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private record LastKnown(Map<String, String> hours, Instant fetchedAt) {
+    }
+
+    private record Entry(CompletableFuture<Map<String, String>> hours, Instant expiresAt) {
+        boolean isFresh(Instant now) {
+            return now.isBefore(expiresAt);
+        }
+    }
+
+    private final FlightConditionsAgent.WeatherService weatherService;
+    private final String baseUrl;
+    private final double cellSizeDegrees;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ConcurrentHashMap<GeoCell, Entry> entries = new ConcurrentHashMap<>();
+    // The last successful fetch per cell, kept after its entry has expired
+    private final ConcurrentHashMap<GeoCell, LastKnown> lastKnown = new ConcurrentHashMap<>();
+    private final CircuitBreaker breaker;
+
+    public ForecastCache(FlightConditionsAgent.WeatherService weatherService) {
+        this(weatherService, DEFAULT_CELL_SIZE_DEGREES, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    public ForecastCache(
+            FlightConditionsAgent.WeatherService weatherService,
+            double cellSizeDegrees,
+            Duration ttl,
+            Clock clock) {
+        this(weatherService, configuredBaseUrl(), cellSizeDegrees, ttl, clock);
+    }
+
+    public ForecastCache(
+            FlightConditionsAgent.WeatherService weatherService,
+            String baseUrl,
+            double cellSizeDegrees,
+            Duration ttl,
+            Clock clock) {
+        this(weatherService, baseUrl, cellSizeDegrees, ttl, clock,
+                new CircuitBreaker(BREAKER_NAME, BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_DURATION, clock));
+    }
+
+    public ForecastCache(
+            FlightConditionsAgent.WeatherService weatherService,
+            String baseUrl,
+            double cellSizeDegrees,
+            Duration ttl,
+            Clock clock,
+            CircuitBreaker breaker) {
+        this.weatherService = weatherService;
+        this.baseUrl = baseUrl;
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.breaker = breaker;
+    }
+
+    // Returns the forecast hour (as JSON) for the given slot at the given airfield,
+    // or empty if the slot is outside the forecast window.
+    public Optional<String> forecastFor(Airfield airfield, String timeSlotId) {
+        OperationalMetrics.increment(LOOKUPS);
+        var cell = GeoCell.of(airfield, cellSizeDegrees);
+        try {
+            return Optional.ofNullable(hoursFor(cell).get(timeSlotId));
+        } catch (RuntimeException e) {
+            var stale = staleForecast(cell, timeSlotId);
+            if (stale.isEmpty()) {
+                throw e;
+            }
+            log.warn("Serving stale forecast for {}: {}", timeSlotId, e.getMessage());
+            OperationalMetrics.increment(FALLBACKS);
+            return stale;
+        }
+    }
+
+    public CircuitBreaker.State breakerState() {
+        return breaker.state();
+    }
+
+    // The last known forecast for the hour with `stale` set and its age in minutes
+    private Optional<String> staleForecast(GeoCell cell, String timeSlotId) {
+        var known = lastKnown.get(cell);
+        if (known == null || !known.hours().containsKey(timeSlotId)) {
+            return Optional.empty();
+        }
+        try {
+            var hour = (ObjectNode) mapper.readTree(known.hours().get(timeSlotId));
+            hour.put("stale", true);
+            hour.put("forecastAgeMinutes", Duration.between(known.fetchedAt(), clock.instant()).toMinutes());
+            return Optional.of(mapper.writeValueAsString(hour));
+        } catch (JsonProcessingException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Map<String, String> hoursFor(GeoCell cell) {
+        var now = clock.instant();
+        var loading = new CompletableFuture<Map<String, String>>();
+        var entry = entries.compute(cell, (key, existing) ->
+                existing != null && existing.isFresh(now) ? existing : new Entry(loading, now.plus(ttl)));
+
+        if (entry.hours() == loading) {
+            try {
+                loading.complete(load(cell));
+            } catch (RuntimeException e) {
+                // Don't cache failures, the next lookup should try again
+                entries.remove(cell, entry);
+                loading.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return entry.hours().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    private static String configuredBaseUrl() {
+        var configured = System.getProperty(BASE_URL_PROPERTY, System.getenv(BASE_URL_ENV));
+        return configured == null || configured.isBlank() ? DEFAULT_BASE_URL : configured;
+    }
+
+    private Map<String, String> load(GeoCell cell) {
+        log.info("Fetching forecast for cell {}/{}", cell.latIndex(), cell.lonIndex());
+        String apiKey = System.getenv("GOOGLE_AI_GEMINI_API_KEY");
+        String url = baseUrl + String.format(FORECAST_PATH, apiKey, cell.centerLatitude(), cell.centerLongitude());
+        var body = breaker.call(() -> weatherService.fetchForecast(url));
+        try {
+            var response = mapper.readValue(body, FlightConditionsAgent.WeatherResponse.class);
+            // e.g. an error or quota message sent with status 200. Failing keeps
+            // it out of the cache, so the next lookup fetches again.
+            if (response.forecastHours == null) {
+                throw new IllegalStateException("Weather API response has no forecast hours");
+            }
+
+            Map<String, String> hours = new HashMap<>();
+            for (FlightConditionsAgent.ForecastHour hour : response.forecastHours) {
+                var slotId = SLOT_FORMATTER.format(Instant.parse(hour.interval.startTime));
+                hours.put(slotId, mapper.writeValueAsString(hour));
+            }
+            // An empty forecast would leave no hours to fall back to
+            if (!hours.isEmpty()) {
+                lastKnown.put(cell, new LastKnown(hours, clock.instant()));
+            }
+            return hours;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.example.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+
+// Releases a tentative hold once its lease has run out. Scheduled by the
+// booking workflow when it places the hold; a hold that was confirmed or
+// released in the meantime is left alone.
+@ComponentId("hold-expiry")
+public class HoldExpiryAction extends TimedAction {
+
+    private final ComponentClient componentClient;
+
+    public HoldExpiryAction(ComponentClient componentClient) {
+        this.componentClient = componentClient;
+    }
+
+    public record ExpireHold(String slotId, String bookingId) {
+    }
+
+    public static String timerName(String bookingId) {
+        return "hold-expiry-" + bookingId;
+    }
+
+    public Effect expire(ExpireHold cmd) {
+        return effects().asyncDone(
+                componentClient
+                        .forEventSourcedEntity(cmd.slotId())
+                        .method(BookingSlotEntity::releaseHold)
+                        .invokeAsync(new BookingSlotEntity.Command.ReleaseHold(cmd.bookingId(), true)));
+    }
+}
@@ -0,0 +1,39 @@
+package io.example.application;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Named counters for operational metrics of this service instance. The
+// counters are kept in memory per node and are exposed by the metrics endpoint.
+public final class OperationalMetrics {
+
+    private static final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private OperationalMetrics() {
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        counters.computeIfAbsent(name, n -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public static void set(String name, long value) {
+        counters.computeIfAbsent(name, n -> new AtomicLong()).set(value);
+    }
+
+    public static long get(String name) {
+        var counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public static Map<String, Long> snapshot() {
+        var snapshot = new TreeMap<String, Long>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.get()));
+        return snapshot;
+    }
+}
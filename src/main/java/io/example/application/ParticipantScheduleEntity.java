@@ -0,0 +1,100 @@
+package io.example.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.TypeName;
+import akka.javasdk.eventsourcedentity.EventSourcedEntity;
+import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.ParticipantSchedule;
+import io.example.domain.ParticipantSchedule.SlotStatus;
+import io.example.domain.SlotIds;
+
+import java.util.List;
+
+// Holds the whole calendar of one participant, keyed by participant ID. Unlike
+// the participant slot entity (one entity per slot and participant), a year
+// of hourly slots is a single entity with a compact bitmap per status, and
+// status and range queries are answered from memory.
+@ComponentId("participant-schedule")
+public class ParticipantScheduleEntity
+        extends EventSourcedEntity<ParticipantSchedule, ParticipantScheduleEntity.Event> {
+
+    private final String entityId;
+
+    public ParticipantScheduleEntity(EventSourcedEntityContext context) {
+        this.entityId = context.entityId();
+    }
+
+    public Effect<Done> changeStatus(Commands.ChangeStatus cmd) {
+        var event = new Event.StatusChanged(
+                SlotIds.toEpochHour(cmd.slotId()), cmd.participantType(), cmd.status(), cmd.bookingId());
+        return effects()
+                .persist(event)
+                .thenReply(newState -> Done.done());
+    }
+
+    // The participant's status in the given slot, or empty if the participant has never been in it
+    public ReadOnlyEffect<ParticipantSlotsView.SlotList> getSlotStatus(String slotId) {
+        var rows = currentState().entryAt(SlotIds.toEpochHour(slotId))
+                .map(this::toRow)
+                .stream()
+                .toList();
+        return effects().reply(new ParticipantSlotsView.SlotList(rows));
+    }
+
+    // All slots with the given status, optionally limited to a range of slot IDs (inclusive)
+    public ReadOnlyEffect<ParticipantSlotsView.SlotList> getSlotsByStatus(Commands.SlotsByStatus query) {
+        var status = SlotStatus.fromLabel(query.status());
+        if (status.isEmpty()) {
+            return effects().reply(new ParticipantSlotsView.SlotList(List.of()));
+        }
+        long from = query.fromSlotId() == null ? Long.MIN_VALUE : SlotIds.toEpochHour(query.fromSlotId());
+        long to = query.toSlotId() == null ? Long.MAX_VALUE : SlotIds.toEpochHour(query.toSlotId());
+
+        var rows = currentState().entriesWithStatus(status.get(), from, to).stream()
+                .map(this::toRow)
+                .toList();
+        return effects().reply(new ParticipantSlotsView.SlotList(rows));
+    }
+
+    private ParticipantSlotsView.SlotRow toRow(ParticipantSchedule.Entry entry) {
+        return new ParticipantSlotsView.SlotRow(
+                entry.slotId(),
+                entityId,
+                currentState().participantType().toString(),
+                entry.bookingId() == null ? "" : entry.bookingId(),
+                entry.status().label());
+    }
+
+    @Override
+    public ParticipantSchedule emptyState() {
+        return ParticipantSchedule.empty(entityId);
+    }
+
+    @Override
+    public ParticipantSchedule applyEvent(Event event) {
+        return switch (event) {
+            case Event.StatusChanged evt ->
+                    currentState().withStatus(evt.participantType(), evt.epochHour(), evt.status(), evt.bookingId());
+        };
+    }
+
+    public sealed interface Commands {
+        record ChangeStatus(
+                String slotId, ParticipantType participantType, SlotStatus status, String bookingId)
+                implements Commands {
+        }
+
+        record SlotsByStatus(String status, String fromSlotId, String toSlotId) implements Commands {
+        }
+    }
+
+    public sealed interface Event {
+        @TypeName("schedule-status-changed")
+        record StatusChanged(
+                long epochHour, ParticipantType participantType, SlotStatus status, String bookingId)
+                implements Event {
+        }
+    }
+}
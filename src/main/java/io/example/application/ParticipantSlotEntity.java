@@ -2,16 +2,30 @@ package io.example.application;
 
 import akka.Done;
 import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Migration;
 import akka.javasdk.annotations.TypeName;
 import akka.javasdk.eventsourcedentity.EventSourcedEntity;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.example.domain.CompactEventMigration;
 import io.example.domain.Participant.ParticipantType;
+import io.example.domain.ParticipantSchedule.SlotStatus;
+import io.example.domain.SlotIds;
+
+import java.util.Objects;
 
 
 @ComponentId("participant-slot")
 public class ParticipantSlotEntity
         extends EventSourcedEntity<ParticipantSlotEntity.State, ParticipantSlotEntity.Event> {
 
+    // Commands that would not have changed the state and were not persisted
+    public static final String SUPPRESSED_WRITES = "participant-slot.suppressed-writes";
+
     public Effect<Done> unmarkAvailable(ParticipantSlotEntity.Commands.UnmarkAvailable unmark) {
+        if (hasStatus(SlotStatus.NOT_AVAILABLE, null)) {
+            return suppressed();
+        }
         var event = new Event.UnmarkedAvailable(
                 unmark.slotId(), unmark.participantId(), unmark.participantType()
         );
@@ -21,6 +35,9 @@ public class ParticipantSlotEntity
     }
 
     public Effect<Done> markAvailable(ParticipantSlotEntity.Commands.MarkAvailable mark) {
+        if (hasStatus(SlotStatus.AVAILABLE, null)) {
+            return suppressed();
+        }
         var event = new Event.MarkedAvailable(mark.slotId(),  mark.participantId(), mark.participantType());
         return effects()
                 .persist(event)
@@ -28,6 +45,9 @@ public class ParticipantSlotEntity
     }
 
     public Effect<Done> book(ParticipantSlotEntity.Commands.Book book) {
+        if (hasStatus(SlotStatus.BOOKED, book.bookingId())) {
+            return suppressed();
+        }
         var event = new Event.Booked(book.slotId(), book.participantId(), book.participantType(), book.bookingId());
 
         return effects()
@@ -35,7 +55,22 @@ public class ParticipantSlotEntity
                 .thenReply(newState -> Done.done());
     }
 
+    // Deletes a participant slot that is past the retention horizon. Replies
+    // false if it had already expired.
+    public Effect<Boolean> expire() {
+        if (isDeleted() || currentState() == null) {
+            return effects().reply(false);
+        }
+        return effects()
+                .persist(new Event.Expired(SlotIds.toEpochHour(currentState().slotId())))
+                .deleteEntity()
+                .thenReply(newState -> true);
+    }
+
     public Effect<Done> cancel(ParticipantSlotEntity.Commands.Cancel cancel) {
+        if (hasStatus(SlotStatus.CANCELED, cancel.bookingId())) {
+            return suppressed();
+        }
         var event= new Event.Canceled(cancel.slotId(), cancel.participantId(), cancel.participantType(),cancel.bookingId());
 
         return effects()
@@ -43,8 +78,26 @@ public class ParticipantSlotEntity
                 .thenReply(newState -> Done.done());
     }
 
+    // Redelivered events from the consumer arrive as commands for a status the
+    // participant already has. Those are answered without persisting anything.
+    private boolean hasStatus(SlotStatus status, String bookingId) {
+        var state = currentState();
+        return state != null
+                && !isDeleted()
+                && state.status() == status
+                && Objects.equals(state.bookingId(), bookingId);
+    }
+
+    private Effect<Done> suppressed() {
+        OperationalMetrics.increment(SUPPRESSED_WRITES);
+        return effects().reply(Done.done());
+    }
+
+    // `bookingId` is set while booked or canceled. States stored before it was
+    // kept have none, for those a repeated command is persisted as before.
     record State(
-            String slotId, String participantId, ParticipantType participantType, String status) {
+            String slotId, String participantId, ParticipantType participantType, SlotStatus status,
+            String bookingId) {
     }
 
     public sealed interface Commands {
@@ -67,27 +120,68 @@ public class ParticipantSlotEntity
         }
     }
 
+    // Events are journaled in the same compact form as the booking slot events,
+    // see CompactEventMigration
     public sealed interface Event {
-        @TypeName("marked-available")
-        record MarkedAvailable(String slotId, String participantId, ParticipantType participantType)
+        long slotHour();
+
+        default String slotId() {
+            return SlotIds.fromEpochHour(slotHour());
+        }
+
+        @TypeName("pa")
+        @Migration(CompactEventMigration.MarkedAvailable.class)
+        record MarkedAvailable(
+                @JsonProperty("h") long slotHour,
+                @JsonProperty("p") String participantId,
+                @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER) ParticipantType participantType)
                 implements Event {
+            public MarkedAvailable(String slotId, String participantId, ParticipantType participantType) {
+                this(SlotIds.toEpochHour(slotId), participantId, participantType);
+            }
         }
 
-        @TypeName("unmarked-available")
-        record UnmarkedAvailable(String slotId, String participantId, ParticipantType participantType)
+        @TypeName("pu")
+        @Migration(CompactEventMigration.UnmarkedAvailable.class)
+        record UnmarkedAvailable(
+                @JsonProperty("h") long slotHour,
+                @JsonProperty("p") String participantId,
+                @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER) ParticipantType participantType)
                 implements Event {
+            public UnmarkedAvailable(String slotId, String participantId, ParticipantType participantType) {
+                this(SlotIds.toEpochHour(slotId), participantId, participantType);
+            }
         }
 
-        @TypeName("participant-booked")
+        @TypeName("pb")
+        @Migration(CompactEventMigration.Booked.class)
         record Booked(
-                String slotId, String participantId, ParticipantType participantType, String bookingId)
+                @JsonProperty("h") long slotHour,
+                @JsonProperty("p") String participantId,
+                @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER) ParticipantType participantType,
+                @JsonProperty("b") String bookingId)
                 implements Event {
+            public Booked(String slotId, String participantId, ParticipantType participantType, String bookingId) {
+                this(SlotIds.toEpochHour(slotId), participantId, participantType, bookingId);
+            }
         }
 
-        @TypeName("participant-canceled")
+        @TypeName("pc")
+        @Migration(CompactEventMigration.Canceled.class)
         record Canceled(
-                String slotId, String participantId, ParticipantType participantType, String bookingId)
+                @JsonProperty("h") long slotHour,
+                @JsonProperty("p") String participantId,
+                @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER) ParticipantType participantType,
+                @JsonProperty("b") String bookingId)
                 implements Event {
+            public Canceled(String slotId, String participantId, ParticipantType participantType, String bookingId) {
+                this(SlotIds.toEpochHour(slotId), participantId, participantType, bookingId);
+            }
+        }
+
+        // The slot is past the retention horizon and the entity is deleted
+        @TypeName("px")
+        record Expired(@JsonProperty("h") long slotHour) implements Event {
         }
     }
 
@@ -96,18 +190,21 @@ public class ParticipantSlotEntity
         return switch(event){
             case Event.MarkedAvailable evt ->
             // The new state is a 'State' record with status "available"
-            new State(evt.slotId(), evt.participantId(), evt.participantType(), "available");
+            new State(evt.slotId(), evt.participantId(), evt.participantType(), SlotStatus.AVAILABLE, null);
 
             case Event.Booked evt ->
                 // The new state is a 'State' record with status "booked"
-                    new State(evt.slotId(), evt.participantId(), evt.participantType(), "booked");
+                    new State(evt.slotId(), evt.participantId(), evt.participantType(), SlotStatus.BOOKED, evt.bookingId());
 
             case Event.UnmarkedAvailable evt ->
                 // If availability is unmarked
-                    new State(evt.slotId(), evt.participantId(), evt.participantType(), "not available");
+                    new State(evt.slotId(), evt.participantId(), evt.participantType(), SlotStatus.NOT_AVAILABLE, null);
 
             case Event.Canceled evt ->
                 // If the booking is canceled
-                    new State(evt.slotId(), evt.participantId(), evt.participantType(), "canceled");
+                    new State(evt.slotId(), evt.participantId(), evt.participantType(), SlotStatus.CANCELED, evt.bookingId());
+
+            case Event.Expired evt ->
+                    currentState();
     };
 }};
@@ -9,6 +9,7 @@ import io.example.application.ParticipantSlotEntity.Event.Booked;
 import io.example.application.ParticipantSlotEntity.Event.Canceled;
 import io.example.application.ParticipantSlotEntity.Event.MarkedAvailable;
 import io.example.application.ParticipantSlotEntity.Event.UnmarkedAvailable;
+import io.opentelemetry.api.trace.Span;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,10 +19,18 @@ public class ParticipantSlotsView extends View {
 
     private static Logger logger = LoggerFactory.getLogger(ParticipantSlotsView.class);
 
+    public static final String VIEW_LAG_MS = "view.participant-slots.propagation-delay-ms";
+
     @Consume.FromEventSourcedEntity(ParticipantSlotEntity.class)
     public static class ParticipantSlotsViewUpdater extends TableUpdater<SlotRow> {
 
         public Effect<SlotRow> onEvent(ParticipantSlotEntity.Event event) {
+            // End-to-end delay from the participant slot event to the view row.
+            // Combined with the consumer's delay it attributes the time to the view.
+            TraceSpans.propagationDelayMillis(updateContext().metadata()).ifPresent(delay -> {
+                Span.current().setAttribute(TraceSpans.PROPAGATION_DELAY_MS, delay);
+                OperationalMetrics.set(VIEW_LAG_MS, delay);
+            });
             return switch(event) {
                 case ParticipantSlotEntity.Event.MarkedAvailable evt ->
                     // Create/update a row with status "available"
@@ -57,6 +66,8 @@ public class ParticipantSlotsView extends View {
                                 evt.bookingId(),
                                 "cancelled"
                         ));
+                case ParticipantSlotEntity.Event.Expired evt ->
+                        effects().deleteRow();
             };
         }
     }
@@ -72,9 +83,18 @@ public class ParticipantSlotsView extends View {
     public record ParticipantStatusInput(String participantId, String status) {
     }
 
+    public record ParticipantsStatusInput(List<String> participantIds, String status) {
+    }
+
     public record SlotList(List<SlotRow> slots) {
     }
 
+    public record ExpiredSlotsInput(String cutoffSlotId, int limit) {
+    }
+
+    public record SlotRangeInput(String fromSlotId, String toSlotId) {
+    }
+
     // @Query("SELECT .... ")
     @Query("SELECT * AS slots FROM participant_slots WHERE participantId = :participantId")
     public QueryEffect<SlotList> getSlotsByParticipant(String participantId) {
@@ -87,4 +107,30 @@ public class ParticipantSlotsView extends View {
     public QueryEffect<SlotList> getSlotsByParticipantAndStatus(ParticipantStatusInput input) {
         return queryResult();
     }
+
+    // The slots with the given status of any of the participants, e.g. to compare their utilization
+    @Query("SELECT * AS slots FROM participant_slots WHERE participantId = ANY(:participantIds) AND status = :status")
+    public QueryEffect<SlotList> getSlotsByParticipantsAndStatus(ParticipantsStatusInput input) {
+        return queryResult();
+    }
+
+    // Slot IDs sort chronologically, so this returns rows for slots before the cutoff
+    @Query("SELECT * AS slots FROM participant_slots WHERE slotId < :cutoffSlotId LIMIT :limit")
+    public QueryEffect<SlotList> getSlotsBefore(ExpiredSlotsInput input) {
+        return queryResult();
+    }
+
+    // Rows of every slot in the range, both ends included. A slot without rows
+    // has never had a participant marked available or booked.
+    @Query("SELECT * AS slots FROM participant_slots WHERE slotId >= :fromSlotId AND slotId <= :toSlotId")
+    public QueryEffect<SlotList> getSlotsBetween(SlotRangeInput input) {
+        return queryResult();
+    }
+
+    // Emits all current rows for the participant as the initial snapshot and then
+    // each row as it is created or updated
+    @Query(value = "SELECT * FROM participant_slots WHERE participantId = :participantId", streamUpdates = true)
+    public QueryStreamEffect<SlotRow> streamSlotsByParticipant(String participantId) {
+        return queryStreamResult();
+    }
 }
@@ -0,0 +1,60 @@
+package io.example.application;
+
+import akka.javasdk.JsonSupport;
+import io.example.application.ParticipantSlotsView.SlotRow;
+import io.example.domain.Timeslot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Appends data removed by the retention sweeper to a local NDJSON file, one
+// file per day, so that past slots can still be inspected or reloaded.
+public class RetentionArchive {
+
+    public record ArchivedParticipantSlot(String kind, SlotRow row) {
+    }
+
+    public record ArchivedBookingSlot(String kind, String slotId, Timeslot slot) {
+    }
+
+    private final Path directory;
+    private final List<String> pending = new ArrayList<>();
+
+    public RetentionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    public void add(SlotRow row) {
+        pending.add(JsonSupport.encodeToString(new ArchivedParticipantSlot("participant-slot", row)));
+    }
+
+    public void add(String slotId, Timeslot slot) {
+        pending.add(JsonSupport.encodeToString(new ArchivedBookingSlot("booking-slot", slotId, slot)));
+    }
+
+    // Writes all pending records and returns the number written
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        var file = directory.resolve("retention-" + LocalDate.now(ZoneOffset.UTC) + ".ndjson");
+        try {
+            Files.createDirectories(directory);
+            Files.write(file, pending, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int written = pending.size();
+        pending.clear();
+        return written;
+    }
+}
@@ -0,0 +1,141 @@
+package io.example.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import io.example.application.ParticipantSlotsView.SlotRow;
+import io.example.domain.SlotIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+// Periodically removes slots that are past the retention horizon. Participant
+// slot rows and the booking slots are archived first, then the participant
+// slot entities (which removes the view rows), the booking slot entities and
+// the booking index entries are deleted. The phases run one after another,
+// the calls within a phase concurrently, at most PARALLELISM at a time. Each
+// run handles at most one batch of rows and schedules the next run.
+@ComponentId("retention-sweeper")
+public class RetentionSweeper extends TimedAction {
+    private static final Logger log = LoggerFactory.getLogger(RetentionSweeper.class);
+
+    public static final String TIMER_NAME = "retention-sweep";
+
+    public static final String ROWS_RECLAIMED = "retention.participant-slots-reclaimed";
+    public static final String SLOTS_RECLAIMED = "retention.booking-slots-reclaimed";
+    public static final String BOOKINGS_RECLAIMED = "retention.booking-index-reclaimed";
+    public static final String RECORDS_ARCHIVED = "retention.records-archived";
+
+    private static final int PARALLELISM = 16;
+
+    private final ComponentClient componentClient;
+    private final Materializer materializer;
+    private final Duration horizon;
+    private final Duration interval;
+    private final int batchSize;
+    private final Path archiveDirectory;
+
+    public RetentionSweeper(ComponentClient componentClient, Materializer materializer, Config config) {
+        this.componentClient = componentClient;
+        this.materializer = materializer;
+        this.horizon = config.getDuration("flight.retention.horizon");
+        this.interval = config.getDuration("flight.retention.sweep-interval");
+        this.batchSize = config.getInt("flight.retention.batch-size");
+        this.archiveDirectory = Path.of(config.getString("flight.retention.archive-dir"));
+    }
+
+    public Effect sweep() {
+        var cutoff = SlotIds.fromEpochHour(Instant.now().minus(horizon).getEpochSecond() / 3600);
+        return effects().asyncDone(componentClient
+                .forView()
+                .method(ParticipantSlotsView::getSlotsBefore)
+                .invokeAsync(new ParticipantSlotsView.ExpiredSlotsInput(cutoff, batchSize))
+                .thenCompose(expired -> sweepRows(cutoff, expired.slots())));
+    }
+
+    private CompletionStage<Done> sweepRows(String cutoff, List<SlotRow> rows) {
+        var slotIds = new LinkedHashSet<String>();
+        var bookingIds = new LinkedHashSet<String>();
+        for (var row : rows) {
+            slotIds.add(row.slotId());
+            if (!row.bookingId().isEmpty()) {
+                bookingIds.add(row.bookingId());
+            }
+        }
+
+        // Everything is archived and flushed before anything is deleted, so a
+        // failure in between at worst archives a record twice on the next run
+        var archive = new RetentionArchive(archiveDirectory);
+        rows.forEach(archive::add);
+        var archived = Source.from(slotIds)
+                .mapAsync(PARALLELISM, slotId -> componentClient
+                        .forEventSourcedEntity(slotId)
+                        .method(BookingSlotEntity::getSlot)
+                        .invokeAsync()
+                        .thenApply(slot -> Map.entry(slotId, slot)))
+                .runWith(Sink.foreach(slot -> archive.add(slot.getKey(), slot.getValue())), materializer)
+                .thenApply(done -> archive.flush());
+
+        var rowsReclaimed = archived.thenCompose(done -> countReclaimed(rows, row -> componentClient
+                .forEventSourcedEntity(row.slotId() + "-" + row.participantId())
+                .method(ParticipantSlotEntity::expire)
+                .invokeAsync()));
+
+        var slotsReclaimed = rowsReclaimed.thenCompose(done -> countReclaimed(slotIds, slotId -> componentClient
+                .forEventSourcedEntity(slotId)
+                .method(BookingSlotEntity::expire)
+                .invokeAsync()
+                .thenApply(BookingSlotEntity.ExpireResult::reclaimed)));
+
+        var bookingsDeleted = slotsReclaimed.thenCompose(done -> Source.from(bookingIds)
+                .mapAsyncUnordered(PARALLELISM, bookingId -> componentClient
+                        .forKeyValueEntity(bookingId)
+                        .method(BookingIndexEntity::delete)
+                        .invokeAsync())
+                .runWith(Sink.ignore(), materializer));
+
+        // Each phase waits for the one before it, so every count is available here
+        return bookingsDeleted.thenApply(done -> {
+            int archivedCount = archived.toCompletableFuture().join();
+            int rowsCount = rowsReclaimed.toCompletableFuture().join();
+            int slotsCount = slotsReclaimed.toCompletableFuture().join();
+            OperationalMetrics.add(ROWS_RECLAIMED, rowsCount);
+            OperationalMetrics.add(SLOTS_RECLAIMED, slotsCount);
+            OperationalMetrics.add(BOOKINGS_RECLAIMED, bookingIds.size());
+            OperationalMetrics.add(RECORDS_ARCHIVED, archivedCount);
+            log.info("Retention sweep before {}: {} participant slots, {} booking slots, {} bookings reclaimed, {} records archived",
+                    cutoff, rowsCount, slotsCount, bookingIds.size(), archivedCount);
+
+            // A full batch means there is probably more to reclaim, so continue right away
+            var next = rows.size() >= batchSize ? Duration.ofSeconds(1) : interval;
+            timers().createSingleTimer(
+                    TIMER_NAME,
+                    next,
+                    componentClient.forTimedAction().method(RetentionSweeper::sweep).deferred());
+            return done;
+        });
+    }
+
+    // Runs the given expiry for every element, at most PARALLELISM at a time,
+    // and counts the ones that were actually reclaimed
+    private <T> CompletionStage<Integer> countReclaimed(Collection<T> elements,
+                                                        Function<T, CompletionStage<Boolean>> expire) {
+        return Source.from(elements)
+                .mapAsyncUnordered(PARALLELISM, expire::apply)
+                .runWith(Sink.fold(0, (count, reclaimed) -> reclaimed ? count + 1 : count), materializer);
+    }
+}
@@ -5,6 +5,7 @@ import akka.javasdk.annotations.Consume;
 import akka.javasdk.client.ComponentClient;
 import akka.javasdk.consumer.Consumer;
 import io.example.domain.BookingEvent;
+import io.opentelemetry.api.trace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +25,10 @@ public class SlotToParticipantConsumer extends Consumer {
 
     public Effect onEvent(BookingEvent event) {
         var participantSlot = participantSlotId(event);
+        TraceSpans.annotateCurrent(event.slotId(), null);
+        Span.current().setAttribute(TraceSpans.PARTICIPANT_ID, participantSlot);
+        TraceSpans.propagationDelayMillis(messageContext().metadata())
+                .ifPresent(delay -> Span.current().setAttribute(TraceSpans.PROPAGATION_DELAY_MS, delay));
     //When an event arrives in onEvent(), it transforms that event into a corresponding command:
         //ParticipantMarkedAvailable event → MarkAvailable command
         return switch (event) {
@@ -57,6 +62,17 @@ public class SlotToParticipantConsumer extends Consumer {
                                             evt.slotId(), evt.participantId(), evt.participantType(), evt.bookingId()
                                     )));
 
+            // Holds and the waitlist don't change participant slots, confirmed
+            // and matched bookings arrive as ParticipantBooked events
+            case BookingEvent.ParticipantsHeld evt -> effects().ignore();
+            case BookingEvent.HoldReleased evt -> effects().ignore();
+            case BookingEvent.WaitlistJoined evt -> effects().ignore();
+            case BookingEvent.WaitlistMatched evt -> effects().ignore();
+            case BookingEvent.WaitlistLeft evt -> effects().ignore();
+
+            // Participant slots of expired slots are removed by the retention sweeper
+            case BookingEvent.SlotExpired evt -> effects().ignore();
+
         };
     }
 
@@ -71,6 +87,12 @@ public class SlotToParticipantConsumer extends Consumer {
                 evt.slotId() + "-" + evt.participantId();
             case BookingEvent.ParticipantMarkedAvailable evt -> evt.slotId() + "-" + evt.participantId();
             case BookingEvent.ParticipantCanceled evt -> evt.slotId() + "-" + evt.participantId();
+            case BookingEvent.ParticipantsHeld evt -> evt.slotId();
+            case BookingEvent.HoldReleased evt -> evt.slotId();
+            case BookingEvent.WaitlistJoined evt -> evt.slotId();
+            case BookingEvent.WaitlistMatched evt -> evt.slotId();
+            case BookingEvent.WaitlistLeft evt -> evt.slotId();
+            case BookingEvent.SlotExpired evt -> evt.slotId();
         };
     }
 }
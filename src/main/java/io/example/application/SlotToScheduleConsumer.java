@@ -0,0 +1,52 @@
+package io.example.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.example.domain.BookingEvent;
+import io.example.domain.ParticipantSchedule.SlotStatus;
+
+// This class consumes events from the booking slot entity and records the
+// resulting status of each participant in their participant schedule entity
+@ComponentId("booking-slot-schedule-consumer")
+@Consume.FromEventSourcedEntity(BookingSlotEntity.class)
+public class SlotToScheduleConsumer extends Consumer {
+
+    private final ComponentClient client;
+
+    public SlotToScheduleConsumer(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect onEvent(BookingEvent event) {
+        return switch (event) {
+            case BookingEvent.ParticipantMarkedAvailable evt -> changeStatus(evt.participantId(),
+                    new ParticipantScheduleEntity.Commands.ChangeStatus(
+                            evt.slotId(), evt.participantType(), SlotStatus.AVAILABLE, null));
+            case BookingEvent.ParticipantUnmarkedAvailable evt -> changeStatus(evt.participantId(),
+                    new ParticipantScheduleEntity.Commands.ChangeStatus(
+                            evt.slotId(), evt.participantType(), SlotStatus.NOT_AVAILABLE, null));
+            case BookingEvent.ParticipantBooked evt -> changeStatus(evt.participantId(),
+                    new ParticipantScheduleEntity.Commands.ChangeStatus(
+                            evt.slotId(), evt.participantType(), SlotStatus.BOOKED, evt.bookingId()));
+            case BookingEvent.ParticipantCanceled evt -> changeStatus(evt.participantId(),
+                    new ParticipantScheduleEntity.Commands.ChangeStatus(
+                            evt.slotId(), evt.participantType(), SlotStatus.CANCELED, evt.bookingId()));
+            case BookingEvent.ParticipantsHeld evt -> effects().ignore();
+            case BookingEvent.HoldReleased evt -> effects().ignore();
+            case BookingEvent.WaitlistJoined evt -> effects().ignore();
+            case BookingEvent.WaitlistMatched evt -> effects().ignore();
+            case BookingEvent.WaitlistLeft evt -> effects().ignore();
+            // The schedule keeps the history of past hours, it is only a bit per hour
+            case BookingEvent.SlotExpired evt -> effects().ignore();
+        };
+    }
+
+    private Effect changeStatus(String participantId, ParticipantScheduleEntity.Commands.ChangeStatus command) {
+        return effects().asyncDone(
+                client.forEventSourcedEntity(participantId)
+                        .method(ParticipantScheduleEntity::changeStatus)
+                        .invokeAsync(command));
+    }
+}
@@ -0,0 +1,61 @@
+package io.example.application;
+
+import akka.javasdk.Metadata;
+import akka.javasdk.Tracing;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Helpers for the custom spans of the booking path. The Akka runtime already
+// propagates the trace context across component calls; these spans add the
+// slot and booking the work belongs to, so the critical path of one booking
+// can be followed from the endpoint to the view.
+public final class TraceSpans {
+
+    public static final String SLOT_ID = "booking.slot_id";
+    public static final String BOOKING_ID = "booking.booking_id";
+    public static final String PARTICIPANT_ID = "booking.participant_id";
+    public static final String PROPAGATION_DELAY_MS = "booking.propagation_delay_ms";
+
+    private TraceSpans() {
+    }
+
+    // Marks the span the runtime created for the current component call. It
+    // lasts until the call's effect has been applied, e.g. the events persisted.
+    public static void annotateCurrent(String slotId, String bookingId) {
+        var span = Span.current();
+        if (slotId != null) span.setAttribute(SLOT_ID, slotId);
+        if (bookingId != null) span.setAttribute(BOOKING_ID, bookingId);
+    }
+
+    // Runs the body in a child span of the current component call. The span
+    // ends with the body, use it for work done synchronously in the body.
+    public static <T> T inSpan(Tracing tracing, String name, String slotId, String bookingId, Supplier<T> body) {
+        var span = tracing.startSpan(name);
+        span.ifPresent(s -> {
+            if (slotId != null) s.setAttribute(SLOT_ID, slotId);
+            if (bookingId != null) s.setAttribute(BOOKING_ID, bookingId);
+        });
+        try (Scope scope = span.map(Span::makeCurrent).orElse(Scope.noop())) {
+            return body.get();
+        } catch (RuntimeException e) {
+            span.ifPresent(s -> {
+                s.recordException(e);
+                s.setStatus(StatusCode.ERROR);
+            });
+            throw e;
+        } finally {
+            span.ifPresent(Span::end);
+        }
+    }
+
+    // Time since the event was persisted, from its CloudEvent metadata
+    public static Optional<Long> propagationDelayMillis(Metadata metadata) {
+        return metadata.asCloudEvent().time()
+                .map(time -> Instant.now().toEpochMilli() - time.toInstant().toEpochMilli());
+    }
+}
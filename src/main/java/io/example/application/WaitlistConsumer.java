@@ -0,0 +1,38 @@
+package io.example.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.example.domain.BookingEvent;
+import io.example.workflows.FlightBookingWorkflow;
+
+// This class tells the booking workflow of a waitlisted booking that the slot
+// entity has booked it or that it was withdrawn from the waitlist, so that the
+// workflow can complete with its outcome
+@ComponentId("booking-slot-waitlist-consumer")
+@Consume.FromEventSourcedEntity(BookingSlotEntity.class)
+public class WaitlistConsumer extends Consumer {
+
+    private final ComponentClient client;
+
+    public WaitlistConsumer(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect onEvent(BookingEvent event) {
+        if (event instanceof BookingEvent.WaitlistMatched evt) {
+            return effects().asyncDone(
+                    client.forWorkflow(evt.bookingId())
+                            .method(FlightBookingWorkflow::waitlistMatched)
+                            .invokeAsync());
+        }
+        if (event instanceof BookingEvent.WaitlistLeft evt) {
+            return effects().asyncDone(
+                    client.forWorkflow(evt.bookingId())
+                            .method(FlightBookingWorkflow::waitlistWithdrawn)
+                            .invokeAsync());
+        }
+        return effects().ignore();
+    }
+}
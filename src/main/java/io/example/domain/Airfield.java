@@ -0,0 +1,5 @@
+package io.example.domain;
+
+// An airfield that training sessions can be flown from. The coordinates are
+// used to look up the weather forecast for slots booked at this airfield.
+public record Airfield(String id, String name, double latitude, double longitude) {}
@@ -1,28 +1,123 @@
 package io.example.domain;
 
+import akka.javasdk.annotations.Migration;
 import akka.javasdk.annotations.TypeName;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.example.domain.Participant.ParticipantType;
 
-// The list of all events emitted by the BookingSlotEntity
+// The list of all events emitted by the BookingSlotEntity.
+//
+// Events are journaled in a compact form: the slot as hours since the epoch,
+// short property names and type tags, and the participant type as its
+// ordinal. Events in the earlier form are migrated by CompactEventMigration.
 public sealed interface BookingEvent {
 
-  @TypeName("slot-reserved")
+  long slotHour();
+
+  default String slotId() {
+    return SlotIds.fromEpochHour(slotHour());
+  }
+
+  @TypeName("sa")
+  @Migration(CompactEventMigration.ParticipantMarkedAvailable.class)
   record ParticipantMarkedAvailable(
-      String slotId, String participantId, ParticipantType participantType)
-      implements BookingEvent {}
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("p") String participantId,
+      @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER)
+          ParticipantType participantType)
+      implements BookingEvent {
+    public ParticipantMarkedAvailable(
+        String slotId, String participantId, ParticipantType participantType) {
+      this(SlotIds.toEpochHour(slotId), participantId, participantType);
+    }
+  }
 
-  @TypeName("slot-unreserved")
+  @TypeName("su")
+  @Migration(CompactEventMigration.ParticipantUnmarkedAvailable.class)
   record ParticipantUnmarkedAvailable(
-      String slotId, String participantId, ParticipantType participantType)
-      implements BookingEvent {}
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("p") String participantId,
+      @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER)
+          ParticipantType participantType)
+      implements BookingEvent {
+    public ParticipantUnmarkedAvailable(
+        String slotId, String participantId, ParticipantType participantType) {
+      this(SlotIds.toEpochHour(slotId), participantId, participantType);
+    }
+  }
 
-  @TypeName("reservation-booked")
+  @TypeName("sb")
+  @Migration(CompactEventMigration.ParticipantBooked.class)
   record ParticipantBooked(
-      String slotId, String participantId, ParticipantType participantType, String bookingId)
-      implements BookingEvent {}
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("p") String participantId,
+      @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER)
+          ParticipantType participantType,
+      @JsonProperty("b") String bookingId)
+      implements BookingEvent {
+    public ParticipantBooked(
+        String slotId, String participantId, ParticipantType participantType, String bookingId) {
+      this(SlotIds.toEpochHour(slotId), participantId, participantType, bookingId);
+    }
+  }
 
-  @TypeName("booking-participant-canceled")
+  @TypeName("sc")
+  @Migration(CompactEventMigration.ParticipantCanceled.class)
   record ParticipantCanceled(
-      String slotId, String participantId, ParticipantType participantType, String bookingId)
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("p") String participantId,
+      @JsonProperty("t") @JsonFormat(shape = JsonFormat.Shape.NUMBER)
+          ParticipantType participantType,
+      @JsonProperty("b") String bookingId)
+      implements BookingEvent {
+    public ParticipantCanceled(
+        String slotId, String participantId, ParticipantType participantType, String bookingId) {
+      this(SlotIds.toEpochHour(slotId), participantId, participantType, bookingId);
+    }
+  }
+
+  // A booking that was not bookable is waiting for its participants
+  @TypeName("wj")
+  record WaitlistJoined(
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("s") String studentId,
+      @JsonProperty("a") String aircraftId,
+      @JsonProperty("i") String instructorId,
+      @JsonProperty("b") String bookingId,
+      @JsonProperty("r") int priority)
+      implements BookingEvent {}
+
+  // A waiting booking became satisfiable and was booked. Persisted after the
+  // three ParticipantBooked events of the booking.
+  @TypeName("wm")
+  record WaitlistMatched(@JsonProperty("h") long slotHour, @JsonProperty("b") String bookingId)
       implements BookingEvent {}
+
+  // A waiting booking was withdrawn
+  @TypeName("wl")
+  record WaitlistLeft(@JsonProperty("h") long slotHour, @JsonProperty("b") String bookingId)
+      implements BookingEvent {}
+
+  // The three participants of a booking are held out of the available set
+  // until the hold is confirmed or released, at the latest at the deadline
+  @TypeName("hh")
+  record ParticipantsHeld(
+      @JsonProperty("h") long slotHour,
+      @JsonProperty("s") String studentId,
+      @JsonProperty("a") String aircraftId,
+      @JsonProperty("i") String instructorId,
+      @JsonProperty("b") String bookingId,
+      @JsonProperty("d") long deadlineEpochMillis)
+      implements BookingEvent {}
+
+  // A hold ends and its participants are available again. When the hold is
+  // confirmed, this is followed by the ParticipantBooked events of the booking.
+  @TypeName("hr")
+  record HoldReleased(@JsonProperty("h") long slotHour, @JsonProperty("b") String bookingId)
+      implements BookingEvent {}
+
+  // The slot is past the retention horizon and the entity is deleted
+  @TypeName("sx")
+  record SlotExpired(@JsonProperty("h") long slotHour) implements BookingEvent {}
 }
@@ -0,0 +1,109 @@
+package io.example.domain;
+
+import akka.javasdk.JsonMigration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.List;
+
+// Reads events written before the compact encoding (version 0). Those were
+// stored under their long type names, with the full slot ID, and with long
+// property names and enum names:
+//
+//   {"slotId":"2025-12-30-10","participantId":"s1","participantType":"STUDENT","bookingId":"b1"}
+//
+// Version 1 stores the slot as hours since the epoch, short property names and
+// the participant type ordinal:
+//
+//   {"h":489178,"p":"s1","t":0,"b":"b1"}
+//
+// Each event class has its own subclass listing the type name it was stored
+// under previously.
+public abstract class CompactEventMigration extends JsonMigration {
+
+  private final List<String> legacyTypeNames;
+
+  protected CompactEventMigration(String... legacyTypeNames) {
+    this.legacyTypeNames = List.of(legacyTypeNames);
+  }
+
+  @Override
+  public int currentVersion() {
+    return 1;
+  }
+
+  @Override
+  public List<String> supportedClassNames() {
+    return legacyTypeNames;
+  }
+
+  @Override
+  public JsonNode transform(int fromVersion, JsonNode json) {
+    if (fromVersion < 1 && json instanceof ObjectNode node) {
+      if (node.has("slotId")) {
+        node.put("h", SlotIds.toEpochHour(node.remove("slotId").asText()));
+      }
+      rename(node, "participantId", "p");
+      rename(node, "participantType", "t");
+      rename(node, "bookingId", "b");
+    }
+    return json;
+  }
+
+  private static void rename(ObjectNode node, String from, String to) {
+    if (node.has(from)) {
+      node.set(to, node.remove(from));
+    }
+  }
+
+  // BookingEvent
+
+  public static class ParticipantMarkedAvailable extends CompactEventMigration {
+    public ParticipantMarkedAvailable() {
+      super("slot-reserved");
+    }
+  }
+
+  public static class ParticipantUnmarkedAvailable extends CompactEventMigration {
+    public ParticipantUnmarkedAvailable() {
+      super("slot-unreserved");
+    }
+  }
+
+  public static class ParticipantBooked extends CompactEventMigration {
+    public ParticipantBooked() {
+      super("reservation-booked");
+    }
+  }
+
+  public static class ParticipantCanceled extends CompactEventMigration {
+    public ParticipantCanceled() {
+      super("booking-participant-canceled");
+    }
+  }
+
+  // ParticipantSlotEntity.Event
+
+  public static class MarkedAvailable extends CompactEventMigration {
+    public MarkedAvailable() {
+      super("marked-available");
+    }
+  }
+
+  public static class UnmarkedAvailable extends CompactEventMigration {
+    public UnmarkedAvailable() {
+      super("unmarked-available");
+    }
+  }
+
+  public static class Booked extends CompactEventMigration {
+    public Booked() {
+      super("participant-booked");
+    }
+  }
+
+  public static class Canceled extends CompactEventMigration {
+    public Canceled() {
+      super("participant-canceled");
+    }
+  }
+}
@@ -8,10 +8,46 @@ import java.util.Optional;
 public record FlightBookingState(
         String slotId,
         Optional<FlightConditionsAgent.ConditionsReport> agentWeatherCheckResponse,
-        FlightEndpoint.BookingRequest request
+        FlightEndpoint.BookingRequest request,
+        BookingStatus status,
+        Boolean held
 
     ){
 
+    // The outcome of a booking workflow. Everything but PENDING, WAITLISTED and
+    // PROVISIONAL is final. A PROVISIONAL booking is booked, but its weather is
+    // only checked once the slot is within the forecast horizon.
+    public enum BookingStatus {
+        PENDING,
+        WAITLISTED,
+        PROVISIONAL,
+        BOOKED,
+        REJECTED_WEATHER,
+        REJECTED_CONFLICT,
+        CANCELED,
+        FAILED;
+
+        public boolean isFinal() {
+            return this != PENDING && this != WAITLISTED && this != PROVISIONAL;
+        }
+    }
+
+    // Workflows started before the status was tracked have no status stored
+    @Override
+    public BookingStatus status() {
+        return status == null ? BookingStatus.PENDING : status;
+    }
+
+    // Bookings beyond the forecast horizon are booked before the weather is checked
+    public boolean weatherDeferred() {
+        return agentWeatherCheckResponse == null || agentWeatherCheckResponse.isEmpty();
+    }
+
+    // Whether the participants are tentatively held in the slot for this booking
+    public boolean holdsParticipants() {
+        return Boolean.TRUE.equals(held);
+    }
+
     public static FlightBookingState initial(
             String slotId,
             Optional<FlightConditionsAgent.ConditionsReport> agentWeatherCheckResponse,
@@ -21,29 +57,43 @@ public record FlightBookingState(
         return new FlightBookingState(
                 slotId,
                 Optional.empty(),
-                request
+                request,
+                BookingStatus.PENDING,
+                false
 
 
 
         );
     }
 
-    public static FlightBookingState withWeatherCheck(
-            String slotId,
-            Optional<FlightConditionsAgent.ConditionsReport> agentWeatherCheckResponse,
-            FlightEndpoint.BookingRequest request
+    public FlightBookingState withWeatherCheck(
+            Optional<FlightConditionsAgent.ConditionsReport> agentWeatherCheckResponse
 
     ){
         return new FlightBookingState(
                 slotId,
                 agentWeatherCheckResponse,
-                request
+                request,
+                status,
+                held
 
 
 
         );
     }
 
+    public FlightBookingState withStatus(BookingStatus status) {
+        return new FlightBookingState(slotId, agentWeatherCheckResponse, request, status, held);
+    }
+
+    public FlightBookingState withHeld(boolean held) {
+        return new FlightBookingState(slotId, agentWeatherCheckResponse, request, status, held);
+    }
+
+    public FlightBookingState withRequest(FlightEndpoint.BookingRequest request) {
+        return new FlightBookingState(slotId, agentWeatherCheckResponse, request, status, held);
+    }
+
 
 
 
@@ -0,0 +1,27 @@
+package io.example.domain;
+
+// A cell in a regular latitude/longitude grid. Airfields that fall into the
+// same cell share a single weather forecast, so the number of forecast fetches
+// grows with the number of regions rather than the number of bookings.
+public record GeoCell(long latIndex, long lonIndex, double sizeDegrees) {
+
+  public static GeoCell of(double latitude, double longitude, double sizeDegrees) {
+    return new GeoCell(
+        (long) Math.floor(latitude / sizeDegrees),
+        (long) Math.floor(longitude / sizeDegrees),
+        sizeDegrees);
+  }
+
+  public static GeoCell of(Airfield airfield, double sizeDegrees) {
+    return of(airfield.latitude(), airfield.longitude(), sizeDegrees);
+  }
+
+  // The forecast for a cell is always requested for its center point
+  public double centerLatitude() {
+    return (latIndex + 0.5) * sizeDegrees;
+  }
+
+  public double centerLongitude() {
+    return (lonIndex + 0.5) * sizeDegrees;
+  }
+}
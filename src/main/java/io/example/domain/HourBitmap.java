@@ -0,0 +1,66 @@
+package io.example.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// A sparse bitmap over epoch hours. Hours are grouped into 64-bit words, one
+// word per 64 consecutive hours (a day spans one or two words), and only
+// words that have at least one bit set are stored.
+public record HourBitmap(TreeMap<Long, Long> words) {
+
+  public static HourBitmap empty() {
+    return new HourBitmap(new TreeMap<>());
+  }
+
+  public boolean get(long epochHour) {
+    Long word = words.get(Math.floorDiv(epochHour, 64L));
+    return word != null && (word & bit(epochHour)) != 0;
+  }
+
+  public HourBitmap set(long epochHour) {
+    words.merge(Math.floorDiv(epochHour, 64L), bit(epochHour), (a, b) -> a | b);
+    return this;
+  }
+
+  public HourBitmap clear(long epochHour) {
+    long index = Math.floorDiv(epochHour, 64L);
+    Long word = words.get(index);
+    if (word != null) {
+      long cleared = word & ~bit(epochHour);
+      if (cleared == 0) {
+        words.remove(index);
+      } else {
+        words.put(index, cleared);
+      }
+    }
+    return this;
+  }
+
+  // All set hours within [fromHour, toHour], in ascending order
+  public List<Long> hoursBetween(long fromHour, long toHour) {
+    List<Long> hours = new ArrayList<>();
+    var range =
+        words.subMap(Math.floorDiv(fromHour, 64L), true, Math.floorDiv(toHour, 64L), true);
+    for (Map.Entry<Long, Long> entry : range.entrySet()) {
+      long word = entry.getValue();
+      while (word != 0) {
+        long hour = entry.getKey() * 64 + Long.numberOfTrailingZeros(word);
+        if (hour >= fromHour && hour <= toHour) {
+          hours.add(hour);
+        }
+        word &= word - 1;
+      }
+    }
+    return hours;
+  }
+
+  public int cardinality() {
+    return words.values().stream().mapToInt(Long::bitCount).sum();
+  }
+
+  private static long bit(long epochHour) {
+    return 1L << Math.floorMod(epochHour, 64L);
+  }
+}
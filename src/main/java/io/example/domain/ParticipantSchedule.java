@@ -0,0 +1,111 @@
+package io.example.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import io.example.domain.Participant.ParticipantType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// The calendar of a single participant. For each status it keeps a bitmap over
+// epoch hours, and for booked or canceled hours the ID of the booking. An hour
+// is in at most one status bitmap at a time.
+public record ParticipantSchedule(
+    String participantId,
+    ParticipantType participantType,
+    EnumMap<SlotStatus, HourBitmap> statuses,
+    Map<Long, String> bookings) {
+
+  public enum SlotStatus {
+    AVAILABLE("available"),
+    BOOKED("booked"),
+    NOT_AVAILABLE("not available"),
+    CANCELED("cancelled");
+
+    private final String label;
+
+    SlotStatus(String label) {
+      this.label = label;
+    }
+
+    public String label() {
+      return label;
+    }
+
+    // Accepts the labels used by the participant slots view, as well as the
+    // 'canceled' spelling used by the participant slot entity
+    public static Optional<SlotStatus> fromLabel(String label) {
+      var normalized = label.trim().toLowerCase();
+      if (normalized.equals("canceled")) {
+        return Optional.of(CANCELED);
+      }
+      for (SlotStatus status : values()) {
+        if (status.label.equals(normalized)) {
+          return Optional.of(status);
+        }
+      }
+      return Optional.empty();
+    }
+
+    // Statuses were once stored as free-form labels, so both the enum names
+    // and the labels are accepted when reading
+    @JsonCreator
+    public static SlotStatus fromJson(String value) {
+      for (SlotStatus status : values()) {
+        if (status.name().equals(value)) {
+          return status;
+        }
+      }
+      return fromLabel(value)
+          .orElseThrow(() -> new IllegalArgumentException("Unknown slot status " + value));
+    }
+  }
+
+  // A single hour of the schedule
+  public record Entry(long epochHour, SlotStatus status, String bookingId) {
+    public String slotId() {
+      return SlotIds.fromEpochHour(epochHour);
+    }
+  }
+
+  public static ParticipantSchedule empty(String participantId) {
+    return new ParticipantSchedule(
+        participantId, null, new EnumMap<>(SlotStatus.class), new HashMap<>());
+  }
+
+  public ParticipantSchedule withStatus(
+      ParticipantType type, long epochHour, SlotStatus status, String bookingId) {
+    statuses.values().forEach(bitmap -> bitmap.clear(epochHour));
+    statuses.computeIfAbsent(status, s -> HourBitmap.empty()).set(epochHour);
+    if (bookingId == null || bookingId.isEmpty()) {
+      bookings.remove(epochHour);
+    } else {
+      bookings.put(epochHour, bookingId);
+    }
+    return new ParticipantSchedule(participantId, type, statuses, bookings);
+  }
+
+  public Optional<Entry> entryAt(long epochHour) {
+    for (Map.Entry<SlotStatus, HourBitmap> status : statuses.entrySet()) {
+      if (status.getValue().get(epochHour)) {
+        return Optional.of(new Entry(epochHour, status.getKey(), bookings.get(epochHour)));
+      }
+    }
+    return Optional.empty();
+  }
+
+  // All hours with the given status within [fromHour, toHour], in ascending order
+  public List<Entry> entriesWithStatus(SlotStatus status, long fromHour, long toHour) {
+    var bitmap = statuses.get(status);
+    if (bitmap == null) {
+      return List.of();
+    }
+    List<Entry> entries = new ArrayList<>();
+    for (long hour : bitmap.hoursBetween(fromHour, toHour)) {
+      entries.add(new Entry(hour, status, bookings.get(hour)));
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,49 @@
+package io.example.domain;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// How a participant is chosen for a booking that accepts more than one, e.g.
+// "any available aircraft". Every policy only considers the candidates that
+// are available; candidates are the preferences in order, or, without
+// preferences, every available participant of the type.
+public enum SelectionPolicy {
+
+    // The first available candidate in the order of the preferences
+    PREFERRED_FIRST {
+        @Override
+        public Optional<String> select(List<String> candidates, Map<String, Integer> utilization) {
+            return candidates.stream().findFirst();
+        }
+    },
+
+    // The available candidate with the fewest booked hours, as reported in
+    // `utilization`. Ties are resolved by preference order.
+    LEAST_UTILIZED {
+        @Override
+        public Optional<String> select(List<String> candidates, Map<String, Integer> utilization) {
+            return candidates.stream()
+                    .min(Comparator.comparingInt(id -> utilization.getOrDefault(id, 0)));
+        }
+    };
+
+    // Chooses from the available candidates, given in preference order
+    public abstract Optional<String> select(List<String> candidates, Map<String, Integer> utilization);
+
+    // Orders the available participants by the preferences. Without preferences
+    // all available participants are candidates, ordered by ID so the choice
+    // does not depend on the order they became available in.
+    public static List<String> candidates(List<String> preferences, Collection<String> available) {
+        if (preferences == null || preferences.isEmpty()) {
+            return available.stream().sorted().toList();
+        }
+        return preferences.stream().distinct().filter(available::contains).toList();
+    }
+
+    public static SelectionPolicy fromName(String name) {
+        return name == null || name.isBlank() ? PREFERRED_FIRST : valueOf(name.strip().toUpperCase());
+    }
+}
@@ -0,0 +1,22 @@
+package io.example.domain;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+// Conversions between slot IDs ('YYYY-MM-DD-HH', UTC) and hours since the epoch.
+// Epoch hours are a compact, ordered representation of a slot.
+public final class SlotIds {
+  private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+
+  private SlotIds() {}
+
+  public static long toEpochHour(String slotId) {
+    return LocalDateTime.parse(slotId, FORMATTER).toEpochSecond(ZoneOffset.UTC) / 3600;
+  }
+
+  public static String fromEpochHour(long epochHour) {
+    var dateTime = LocalDateTime.ofEpochSecond(epochHour * 3600, 0, ZoneOffset.UTC);
+    return dateTime.format(FORMATTER);
+  }
+}
@@ -1,39 +1,199 @@
 package io.example.domain;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.example.domain.Participant.ParticipantType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 // The Timeslot is a core domain object. It maintain two internal sets:
 // the list of bookings and the list of participants available for booking.
 // As bookings and availability are added and removed, the contents of those
 // sets are shifted from one to the other.
-public record Timeslot(Set<Booking> bookings, Set<Participant> available) {
+//
+// Internally both are grouped by participant type, so membership checks are
+// plain lookups of the participant ID without allocating wrapper objects, and
+// bookings are indexed by booking ID. The serialized form is
+// still the two sets of bookings and available participants.
+public final class Timeslot {
 
-  public Timeslot reserve(BookingEvent.ParticipantMarkedAvailable reserved) {
-    available.add(new Participant(reserved.participantId(), reserved.participantType()));
+  // participant type -> IDs of the available participants
+  private final EnumMap<ParticipantType, Set<String>> available =
+      new EnumMap<>(ParticipantType.class);
+  // participant type -> booking ID -> ID of the booked participant
+  private final EnumMap<ParticipantType, Map<String, String>> bookings =
+      new EnumMap<>(ParticipantType.class);
+  // bookings waiting for their participants, highest priority first, then in
+  // the order they joined
+  private final List<WaitlistEntry> waitlist = new ArrayList<>();
+  // booking ID -> participants held for that booking
+  private final Map<String, Hold> holds = new HashMap<>();
+
+  private Timeslot() {}
 
-    return new Timeslot(bookings, available);
+  public static Timeslot empty() {
+    return new Timeslot();
   }
 
-  public Timeslot unreserve(BookingEvent.ParticipantUnmarkedAvailable unreserved) {
-    available.remove(new Participant(unreserved.participantId(), unreserved.participantType()));
+  public Timeslot(Set<Booking> bookings, Set<Participant> available) {
+    this(bookings, available, null, null);
+  }
+
+  @JsonCreator
+  public Timeslot(
+      @JsonProperty("bookings") Set<Booking> bookings,
+      @JsonProperty("available") Set<Participant> available,
+      @JsonProperty("waitlist") List<WaitlistEntry> waitlist,
+      @JsonProperty("holds") List<Hold> holds) {
+    if (available != null) {
+      available.forEach(p -> addAvailable(p.id(), p.participantType()));
+    }
+    if (bookings != null) {
+      bookings.forEach(
+          b -> addBooking(b.participant().id(), b.participant().participantType(), b.bookingId()));
+    }
+    if (waitlist != null) {
+      waitlist.forEach(this::addToWaitlist);
+    }
+    if (holds != null) {
+      holds.forEach(hold -> this.holds.put(hold.bookingId(), hold));
+    }
+  }
+
+  public Timeslot reserve(BookingEvent.ParticipantMarkedAvailable reserved) {
+    addAvailable(reserved.participantId(), reserved.participantType());
+    return this;
+  }
 
-    return new Timeslot(bookings, available);
+  // A held participant that is unmarked stays held, but is not made available
+  // again when the hold is released
+  public Timeslot unreserve(BookingEvent.ParticipantUnmarkedAvailable unreserved) {
+    removeAvailable(unreserved.participantId(), unreserved.participantType());
+    var participant = new Participant(unreserved.participantId(), unreserved.participantType());
+    holds.replaceAll(
+        (bookingId, hold) -> hold.releases(participant) ? hold.withdraw(participant) : hold);
+    return this;
   }
 
   public Timeslot book(BookingEvent.ParticipantBooked booked) {
-    Participant p = new Participant(booked.participantId(), booked.participantType());
-    available.remove(p);
-    bookings.add(new Booking(p, booked.bookingId()));
+    removeAvailable(booked.participantId(), booked.participantType());
+    addBooking(booked.participantId(), booked.participantType(), booked.bookingId());
+    return this;
+  }
 
-    return new Timeslot(bookings, available);
+  // Moves the participants of the hold out of the available set
+  public Timeslot hold(BookingEvent.ParticipantsHeld held) {
+    var hold =
+        new Hold(
+            held.studentId(),
+            held.aircraftId(),
+            held.instructorId(),
+            held.bookingId(),
+            held.deadlineEpochMillis(),
+            Set.of());
+    removeAvailable(hold.studentId(), ParticipantType.STUDENT);
+    removeAvailable(hold.aircraftId(), ParticipantType.AIRCRAFT);
+    removeAvailable(hold.instructorId(), ParticipantType.INSTRUCTOR);
+    holds.put(hold.bookingId(), hold);
+    return this;
+  }
+
+  // Ends the hold and returns its participants to the available set, except
+  // those that were unmarked while held
+  public Timeslot releaseHold(String bookingId) {
+    var hold = holds.remove(bookingId);
+    if (hold != null) {
+      hold.releasedParticipants().forEach(p -> addAvailable(p.id(), p.participantType()));
+    }
+    return this;
+  }
+
+  public Optional<Hold> findHold(String bookingId) {
+    return Optional.ofNullable(holds.get(bookingId));
+  }
+
+  public Timeslot joinWaitlist(BookingEvent.WaitlistJoined joined) {
+    addToWaitlist(
+        new WaitlistEntry(
+            joined.studentId(),
+            joined.aircraftId(),
+            joined.instructorId(),
+            joined.bookingId(),
+            joined.priority()));
+    return this;
+  }
+
+  public Timeslot leaveWaitlist(String bookingId) {
+    waitlist.removeIf(entry -> entry.bookingId().equals(bookingId));
+    return this;
+  }
+
+  public boolean isWaitlisted(String bookingId) {
+    return waitlist.stream().anyMatch(entry -> entry.bookingId().equals(bookingId));
+  }
+
+  public int waitlistSize() {
+    return waitlist.size();
+  }
+
+  // Returns the waiting bookings that can be booked, in priority order, given the
+  // participants currently available plus the supplied extra participant (which
+  // may be null). A participant is only used by the first entry that needs it.
+  public List<WaitlistEntry> matchWaitlist(Participant extra) {
+    return matchWaitlist(extra == null ? List.of() : List.of(extra));
+  }
+
+  // As above, with several extra participants, e.g. those of a released hold
+  public List<WaitlistEntry> matchWaitlist(Collection<Participant> extra) {
+    if (waitlist.isEmpty()) {
+      return List.of();
+    }
+    List<WaitlistEntry> matched = new ArrayList<>();
+    EnumMap<ParticipantType, Set<String>> used = new EnumMap<>(ParticipantType.class);
+    for (WaitlistEntry entry : waitlist) {
+      if (isFree(entry.studentId(), ParticipantType.STUDENT, extra, used)
+          && isFree(entry.aircraftId(), ParticipantType.AIRCRAFT, extra, used)
+          && isFree(entry.instructorId(), ParticipantType.INSTRUCTOR, extra, used)) {
+        used.computeIfAbsent(ParticipantType.STUDENT, t -> new HashSet<>()).add(entry.studentId());
+        used.computeIfAbsent(ParticipantType.AIRCRAFT, t -> new HashSet<>()).add(entry.aircraftId());
+        used.computeIfAbsent(ParticipantType.INSTRUCTOR, t -> new HashSet<>())
+            .add(entry.instructorId());
+        matched.add(entry);
+      }
+    }
+    return matched;
+  }
+
+  private boolean isFree(
+      String participantId,
+      ParticipantType type,
+      Collection<Participant> extra,
+      Map<ParticipantType, Set<String>> used) {
+    boolean available =
+        isWaiting(participantId, type) || extra.contains(new Participant(participantId, type));
+    var usedIds = used.get(type);
+    return available && (usedIds == null || !usedIds.contains(participantId));
+  }
+
+  // Checks if the given participant is held for a booking and would be made
+  // available again when the hold is released
+  public boolean isHeld(String participantId, ParticipantType participantType) {
+    var participant = new Participant(participantId, participantType);
+    return holds.values().stream().anyMatch(hold -> hold.releases(participant));
   }
 
   // Checks to see if the given participant is among those marked as available
   public boolean isWaiting(String participantId, ParticipantType participantType) {
-    return available.contains(new Participant(participantId, participantType));
+    var ids = available.get(participantType);
+    return ids != null && ids.contains(participantId);
   }
 
   public boolean isBookable(String studentId, String aircraftId, String instructorId) {
@@ -42,21 +202,188 @@ public record Timeslot(Set<Booking> bookings, Set<Participant> available) {
         && isWaiting(instructorId, ParticipantType.INSTRUCTOR);
   }
 
+  // Chooses one of the available participants of the type, see SelectionPolicy
+  public Optional<String> selectAvailable(
+      ParticipantType participantType,
+      List<String> preferences,
+      SelectionPolicy policy,
+      Map<String, Integer> utilization) {
+    var ids = available.getOrDefault(participantType, Set.of());
+    return policy.select(SelectionPolicy.candidates(preferences, ids), utilization);
+  }
+
+  public int availableCount(ParticipantType participantType) {
+    var ids = available.get(participantType);
+    return ids == null ? 0 : ids.size();
+  }
+
+  public int bookedCount(ParticipantType participantType) {
+    var byBooking = bookings.get(participantType);
+    return byBooking == null ? 0 : byBooking.size();
+  }
+
+  public int holdCount() {
+    return holds.size();
+  }
+
+  // True if at least one participant of every type is available, so that some
+  // combination of them could be booked
+  public boolean hasAvailableOfEveryType() {
+    for (ParticipantType type : ParticipantType.values()) {
+      if (availableCount(type) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // Retrieves all booking entries for a given booking ID. Note that there will
   // be 3 participants for a single booking, so this will usually return no items
   // or 3 items.
   public List<Booking> findBooking(String bookingId) {
-    return bookings.stream().filter(b -> b.bookingId().equals(bookingId)).toList();
+    List<Booking> found = new ArrayList<>(3);
+    bookings.forEach(
+        (type, byBooking) -> {
+          var participantId = byBooking.get(bookingId);
+          if (participantId != null) {
+            found.add(new Booking(new Participant(participantId, type), bookingId));
+          }
+        });
+    return found;
   }
 
   // Removes all three participants of a booking from the booking list. It does
   // not automatically mark them as available for that slot.
   public Timeslot cancelBooking(String bookingId) {
-    Set<Booking> books =
-        bookings.stream().filter(b -> !b.bookingId().equals(bookingId)).collect(Collectors.toSet());
-    return new Timeslot(books, available);
+    bookings.values().forEach(byBooking -> byBooking.remove(bookingId));
+    return this;
+  }
+
+  @JsonProperty("bookings")
+  public Set<Booking> bookings() {
+    Set<Booking> result = new HashSet<>();
+    bookings.forEach(
+        (type, byBooking) ->
+            byBooking.forEach(
+                (bookingId, participantId) ->
+                    result.add(new Booking(new Participant(participantId, type), bookingId))));
+    return result;
+  }
+
+  @JsonProperty("available")
+  public Set<Participant> available() {
+    Set<Participant> result = new HashSet<>();
+    available.forEach((type, ids) -> ids.forEach(id -> result.add(new Participant(id, type))));
+    return result;
+  }
+
+  @JsonProperty("waitlist")
+  public List<WaitlistEntry> waitlist() {
+    return List.copyOf(waitlist);
+  }
+
+  @JsonProperty("holds")
+  public List<Hold> holds() {
+    return List.copyOf(holds.values());
+  }
+
+  private void addAvailable(String participantId, ParticipantType type) {
+    available.computeIfAbsent(type, t -> new HashSet<>(4)).add(participantId);
+  }
+
+  private void removeAvailable(String participantId, ParticipantType type) {
+    var ids = available.get(type);
+    if (ids != null) {
+      ids.remove(participantId);
+    }
   }
 
+  private void addToWaitlist(WaitlistEntry entry) {
+    if (isWaitlisted(entry.bookingId())) {
+      return;
+    }
+    // Insert after all entries of the same or higher priority
+    int index = 0;
+    while (index < waitlist.size() && waitlist.get(index).priority() >= entry.priority()) {
+      index++;
+    }
+    waitlist.add(index, entry);
+  }
+
+  private void addBooking(String participantId, ParticipantType type, String bookingId) {
+    bookings
+        .computeIfAbsent(type, t -> new HashMap<>(4))
+        .put(bookingId, participantId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Timeslot other
+        && available.equals(other.available)
+        && bookings.equals(other.bookings)
+        && waitlist.equals(other.waitlist)
+        && holds.equals(other.holds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(available, bookings, waitlist, holds);
+  }
+
+  @Override
+  public String toString() {
+    return "Timeslot[bookings="
+        + bookings()
+        + ", available="
+        + available()
+        + ", waitlist="
+        + waitlist
+        + ", holds="
+        + holds.values()
+        + "]";
+  }
+
+  public record Booking(Participant participant, String bookingId) {}
+
+  // Participants held for a booking until the deadline. `withdrawn` are the
+  // held participants that were unmarked in the meantime.
+  public record Hold(
+      String studentId,
+      String aircraftId,
+      String instructorId,
+      String bookingId,
+      long deadlineEpochMillis,
+      Set<Participant> withdrawn) {
+
+    public Hold {
+      // Holds stored before withdrawals were kept have none
+      withdrawn = withdrawn == null ? Set.of() : Set.copyOf(withdrawn);
+    }
+
+    public List<Participant> participants() {
+      return List.of(
+          new Participant(studentId, ParticipantType.STUDENT),
+          new Participant(aircraftId, ParticipantType.AIRCRAFT),
+          new Participant(instructorId, ParticipantType.INSTRUCTOR));
+    }
+
+    // The participants that are made available again when the hold is released
+    public List<Participant> releasedParticipants() {
+      return participants().stream().filter(p -> !withdrawn.contains(p)).toList();
+    }
+
+    boolean releases(Participant participant) {
+      return participants().contains(participant) && !withdrawn.contains(participant);
+    }
+
+    Hold withdraw(Participant participant) {
+      var all = new HashSet<>(withdrawn);
+      all.add(participant);
+      return new Hold(studentId, aircraftId, instructorId, bookingId, deadlineEpochMillis, all);
+    }
+  }
 
-    public record Booking(Participant participant, String bookingId) {}
+  // A booking waiting for all of its participants to become available
+  public record WaitlistEntry(
+      String studentId, String aircraftId, String instructorId, String bookingId, int priority) {}
 }
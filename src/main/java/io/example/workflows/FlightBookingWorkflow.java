@@ -2,24 +2,53 @@ package io.example.workflows;
 
 
 import akka.Done;
+import akka.javasdk.CommandException;
 import akka.javasdk.annotations.Component;
 import akka.javasdk.client.ComponentClient;
 import akka.javasdk.workflow.Workflow;
 import io.example.api.FlightEndpoint;
 import io.example.application.BookingSlotEntity;
+import io.example.application.HoldExpiryAction;
+import io.example.application.ParticipantSlotsView;
+import io.example.application.TraceSpans;
 import io.example.domain.FlightBookingState;
+import io.example.domain.FlightBookingState.BookingStatus;
+import io.example.domain.Participant;
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.SelectionPolicy;
 import io.example.application.FlightConditionsAgent;
+import io.example.application.ForecastCache;
+import io.example.domain.SlotIds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static akka.javasdk.workflow.Workflow.RecoverStrategy.maxRetries;
 
 
 @Component(id="flight-booking-workflow")
 public class FlightBookingWorkflow extends Workflow<FlightBookingState> {
     private static final Logger log = LoggerFactory.getLogger(FlightBookingWorkflow.class);
+
+    // The agent can take a while to generate its response
+    private static final Duration WEATHER_STEP_TIMEOUT = Duration.ofSeconds(30);
+    // Longer than the weather step can take in the worst case, every attempt
+    // running into its timeout, plus the retries of the booking step
+    private static final Duration HOLD_LEASE = Duration.ofMinutes(5);
+    // Margin so the re-check runs once the slot's forecast is surely available
+    private static final Duration RECHECK_MARGIN = Duration.ofHours(1);
+    // Wait before trying a failed re-check again
+    private static final Duration RECHECK_RETRY_DELAY = Duration.ofMinutes(15);
+    // Participants ranked per type by LEAST_UTILIZED
+    private static final int MAX_RANKED_CANDIDATES = 20;
     private final ComponentClient componentClient;
 
     public FlightBookingWorkflow(
@@ -30,40 +59,247 @@ public class FlightBookingWorkflow extends Workflow<FlightBookingState> {
 
     @Override
     public Workflow.WorkflowSettings settings() {
-        // This is so it doesnt timeout when LLM is generating response
+        // Step bodies run on virtual threads, so waiting for the agent or the
+        // slot entity doesn't hold on to a platform thread. Each step gets its
+        // own timeout and recovery, a booking that keeps failing ends as FAILED
+        // rather than being retried forever.
         return Workflow.WorkflowSettings.builder()
+                .defaultStepTimeout(Duration.ofSeconds(5))
+                // This is so it doesnt timeout when LLM is generating response
+                .stepTimeout(
+                        FlightBookingWorkflow::updateStateWithWeatherConditions,
+                        WEATHER_STEP_TIMEOUT)
                 .stepTimeout(
+                        FlightBookingWorkflow::recheckWeatherConditions,
+                        WEATHER_STEP_TIMEOUT)
+                .stepRecovery(
+                        FlightBookingWorkflow::recheckWeatherConditions,
+                        maxRetries(1).failoverTo(FlightBookingWorkflow::retryWeatherRecheck))
+                .stepRecovery(
+                        FlightBookingWorkflow::holdParticipants,
+                        maxRetries(3).failoverTo(FlightBookingWorkflow::failBooking))
+                .stepRecovery(
                         FlightBookingWorkflow::updateStateWithWeatherConditions,
-                        Duration.ofSeconds(30)) // 30-second timeout for this step
+                        maxRetries(1).failoverTo(FlightBookingWorkflow::failBooking))
+                .stepRecovery(
+                        FlightBookingWorkflow::bookOrBlockSlot,
+                        maxRetries(3).failoverTo(FlightBookingWorkflow::failBooking))
+                .stepRecovery(
+                        FlightBookingWorkflow::joinWaitlist,
+                        maxRetries(3).failoverTo(FlightBookingWorkflow::failBooking))
                 .build();
     }
 
     public record BookingCommand(String slotId, FlightEndpoint.BookingRequest request){}
 
+    public Effect<FlightBookingState> getBooking() {
+        if (currentState() == null) {
+            return effects().error("Booking not found");
+        }
+        return effects().reply(currentState());
+    }
+
     public Effect<Done> startWorkflow(BookingCommand cmd) {
 //        checks if work flow has already started, if so then it returns a done effect as the step is already done.
+//        The workflow is keyed by booking id, so this is a retry of the same booking.
         if(currentState() != null) {
             return effects().reply(Done.getInstance());
         }
 
+        TraceSpans.annotateCurrent(cmd.slotId(), cmd.request().bookingId());
         var newState = FlightBookingState.initial(cmd.slotId, Optional.empty(), cmd.request);
         return effects()
                 .updateState(newState)
-                .transitionTo(FlightBookingWorkflow::updateStateWithWeatherConditions)
+                .transitionTo(FlightBookingWorkflow::holdParticipants)
+                .thenReply(Done.getInstance());
+    }
+
+    // Called once the slot entity has booked a waitlisted booking
+    public Effect<Done> waitlistMatched() {
+        if (currentState() == null || currentState().status() != BookingStatus.WAITLISTED) {
+            return effects().reply(Done.getInstance());
+        }
+        log.info("Waitlisted booking {} booked", currentState().request().bookingId());
+        if (currentState().weatherDeferred()) {
+            return effects()
+                    .updateState(currentState().withStatus(BookingStatus.PROVISIONAL))
+                    .transitionTo(FlightBookingWorkflow::awaitWeatherRecheck)
+                    .thenReply(Done.getInstance());
+        }
+        return effects()
+                .updateState(currentState().withStatus(BookingStatus.BOOKED))
+                .end()
+                .thenReply(Done.getInstance());
+    }
+
+    // Called by the re-check timer of a provisional booking
+    public Effect<Done> recheckWeather() {
+        if (currentState() == null || currentState().status() != BookingStatus.PROVISIONAL) {
+            return effects().reply(Done.getInstance());
+        }
+        TraceSpans.annotateCurrent(currentState().slotId(), currentState().request().bookingId());
+        return effects()
+                .transitionTo(FlightBookingWorkflow::recheckWeatherConditions)
+                .thenReply(Done.getInstance());
+    }
+
+    // Called once a waitlisted booking has been canceled before it was booked
+    public Effect<Done> waitlistWithdrawn() {
+        if (currentState() == null || currentState().status() != BookingStatus.WAITLISTED) {
+            return effects().reply(Done.getInstance());
+        }
+        return effects()
+                .updateState(currentState().withStatus(BookingStatus.REJECTED_CONFLICT))
+                .end()
                 .thenReply(Done.getInstance());
     }
 
+    // Tentatively holds all participants before asking the agent about the
+    // weather. A concurrent booking for the same participants then fails here,
+    // right away and without an LLM call, instead of after the weather check.
+    // Bookings that may join the waitlist still go on to the weather check
+    // without a hold, as they can be booked later.
+    private StepEffect holdParticipants() {
+        var request = currentState().request();
+        var deadline = Instant.now().plus(HOLD_LEASE);
+        if (request.autoAssigns()) {
+            return holdAssignedParticipants(deadline);
+        }
+        try {
+            componentClient
+                    .forEventSourcedEntity(currentState().slotId())
+                    .method(BookingSlotEntity::holdSlot)
+                    .invoke(new BookingSlotEntity.Command.HoldReservation(reservation(), deadline.toEpochMilli()));
+        } catch (CommandException e) {
+            if (request.joinsWaitlist()) {
+                return stepEffects().thenTransitionTo(FlightBookingWorkflow::updateStateWithWeatherConditions);
+            }
+            log.info("Unable to book slot as not all participants are available");
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.REJECTED_CONFLICT))
+                    .thenEnd();
+        }
+
+        scheduleHoldExpiry();
+        return stepEffects()
+                .updateState(currentState().withHeld(true))
+                .thenTransitionTo(FlightBookingWorkflow::updateStateWithWeatherConditions);
+    }
+
+    // Lets the slot choose the aircraft and instructor and hold them. The rest
+    // of the workflow then books the participants it chose.
+    private StepEffect holdAssignedParticipants(Instant deadline) {
+        var request = currentState().request();
+        var policy = SelectionPolicy.fromName(request.selectionPolicy());
+        var aircraftIds = request.aircraftCandidates();
+        var instructorIds = request.instructorCandidates();
+        Map<String, Integer> utilization = Map.of();
+        if (policy == SelectionPolicy.LEAST_UTILIZED) {
+            // An open request is ranked among the participants available in the slot
+            Set<Participant> available = aircraftIds.isEmpty() || instructorIds.isEmpty()
+                    ? componentClient
+                            .forEventSourcedEntity(currentState().slotId())
+                            .method(BookingSlotEntity::getSlot)
+                            .invoke()
+                            .available()
+                    : Set.of();
+            aircraftIds = rankedCandidates(aircraftIds, ParticipantType.AIRCRAFT, available);
+            instructorIds = rankedCandidates(instructorIds, ParticipantType.INSTRUCTOR, available);
+            utilization = utilization(Stream.concat(aircraftIds.stream(), instructorIds.stream()).toList());
+        }
+        BookingSlotEntity.Command.BookReservation chosen;
+        try {
+            chosen = componentClient
+                    .forEventSourcedEntity(currentState().slotId())
+                    .method(BookingSlotEntity::holdAssigned)
+                    .invoke(new BookingSlotEntity.Command.HoldAssigned(
+                            request.studentId(),
+                            aircraftIds,
+                            instructorIds,
+                            request.bookingId(),
+                            deadline.toEpochMilli(),
+                            policy,
+                            utilization));
+        } catch (CommandException e) {
+            log.info("Unable to book slot as no matching participants are available");
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.REJECTED_CONFLICT))
+                    .thenEnd();
+        }
+
+        log.info("Booking {} assigned aircraft {} and instructor {}",
+                request.bookingId(), chosen.aircraftId(), chosen.instructorId());
+        scheduleHoldExpiry();
+        return stepEffects()
+                .updateState(currentState()
+                        .withRequest(request.withParticipants(chosen.aircraftId(), chosen.instructorId()))
+                        .withHeld(true))
+                .thenTransitionTo(FlightBookingWorkflow::updateStateWithWeatherConditions);
+    }
+
+    // The candidates LEAST_UTILIZED ranks: those listed in the request, or the
+    // participants of the type available in the slot. At most
+    // MAX_RANKED_CANDIDATES, so the utilization query stays small.
+    private static List<String> rankedCandidates(
+            List<String> listed, ParticipantType type, Set<Participant> available) {
+        var candidates = listed.isEmpty()
+                ? available.stream()
+                        .filter(p -> p.participantType() == type)
+                        .map(Participant::id)
+                        .sorted()
+                        .toList()
+                : listed;
+        return candidates.stream().limit(MAX_RANKED_CANDIDATES).toList();
+    }
+
+    // Booked hours of the candidates, counted in one query of the participant slots view
+    private Map<String, Integer> utilization(List<String> candidates) {
+        var utilization = new HashMap<String, Integer>();
+        if (candidates.isEmpty()) {
+            return utilization;
+        }
+        candidates.forEach(id -> utilization.put(id, 0));
+        componentClient
+                .forView()
+                .method(ParticipantSlotsView::getSlotsByParticipantsAndStatus)
+                .invoke(new ParticipantSlotsView.ParticipantsStatusInput(candidates, "booked"))
+                .slots()
+                .forEach(row -> utilization.merge(row.participantId(), 1, Integer::sum));
+        return utilization;
+    }
+
+    // Releases the hold if the workflow doesn't confirm or release it in time
+    private void scheduleHoldExpiry() {
+        var bookingId = currentState().request().bookingId();
+        timers().createSingleTimer(
+                HoldExpiryAction.timerName(bookingId),
+                HOLD_LEASE,
+                componentClient
+                        .forTimedAction()
+                        .method(HoldExpiryAction::expire)
+                        .deferred(new HoldExpiryAction.ExpireHold(currentState().slotId(), bookingId)));
+    }
+
     private StepEffect updateStateWithWeatherConditions() {
+        // There is no forecast yet for slots beyond the horizon, asking the agent
+        // would only get a verdict without information. They are booked and
+        // checked later instead.
+        if (beyondForecastHorizon()) {
+            log.info("Deferring the weather check of booking {} for slot {}",
+                    currentState().request().bookingId(), currentState().slotId());
+            return stepEffects().thenTransitionTo(FlightBookingWorkflow::bookProvisionally);
+        }
 
         var response = componentClient
                 .forAgent()
-                .inSession(UUID.randomUUID().toString()) // Use a new session for each request
+                // The agent keeps no session memory, the booking ID only correlates the call
+                .inSession(currentState().request().bookingId())
                 .method(FlightConditionsAgent::query)
-                .invoke(currentState().slotId());
+                .invoke(new FlightConditionsAgent.WeatherQuery(currentState().slotId(), currentState().request().airfieldId()));
 
         log.info(response.toString());
 
-        var newState = FlightBookingState.withWeatherCheck(currentState().slotId(), Optional.of(response), currentState().request());
+        var newState = currentState().withWeatherCheck(Optional.of(response));
         return stepEffects()
                 .updateState(newState)
                 .thenTransitionTo(FlightBookingWorkflow::bookOrBlockSlot);
@@ -75,20 +311,219 @@ public class FlightBookingWorkflow extends Workflow<FlightBookingState> {
     private StepEffect bookOrBlockSlot() {
         FlightConditionsAgent.ConditionsReport agentResponse = currentState().agentWeatherCheckResponse().get();
         if(agentResponse.meetsRequirements()) {
+            return bookParticipants();
+        }
+        else{
+            log.info("Unable to book slot as weather conditions are dangerous");
+            if (currentState().holdsParticipants()) {
+                releaseHold();
+            }
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.REJECTED_WEATHER).withHeld(false))
+                    .thenEnd();
+
+        }
+
+    }
+
+    // Books a slot beyond the forecast horizon without a weather check
+    private StepEffect bookProvisionally() {
+        return bookParticipants();
+    }
+
+    private StepEffect bookParticipants() {
+        try {
+            if (!(currentState().holdsParticipants() && confirmHold())) {
+                componentClient
+                        .forEventSourcedEntity(currentState().slotId())
+                        .method(BookingSlotEntity::bookSlot)
+                        .invoke(reservation());
+            }
+        } catch (CommandException e) {
+            log.info("Unable to book slot as not all participants are available: {}", e.getMessage());
+            if (currentState().request().joinsWaitlist()) {
+                return stepEffects()
+                        .updateState(currentState().withHeld(false))
+                        .thenTransitionTo(FlightBookingWorkflow::joinWaitlist);
+            }
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.REJECTED_CONFLICT).withHeld(false))
+                    .thenEnd();
+        }
+        return booked();
+    }
+
+    // A booked slot is final, unless its weather check has been deferred
+    private StepEffect booked() {
+        if (currentState().weatherDeferred()) {
+            log.info("Booking {} booked provisionally", currentState().request().bookingId());
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.PROVISIONAL).withHeld(false))
+                    .thenTransitionTo(FlightBookingWorkflow::awaitWeatherRecheck);
+        }
+        log.info("Booking slot booked successfully");
+        return stepEffects()
+                .updateState(currentState().withStatus(BookingStatus.BOOKED).withHeld(false))
+                .thenEnd();
+    }
+
+    // Pauses a provisional booking until its slot is within the forecast horizon
+    private StepEffect awaitWeatherRecheck() {
+        var recheckAt = slotStart().minus(ForecastCache.FORECAST_HORIZON).plus(RECHECK_MARGIN);
+        var delay = Duration.between(Instant.now(), recheckAt);
+        scheduleRecheck(delay.isNegative() ? Duration.ZERO : delay);
+        return stepEffects().thenPause();
+    }
+
+    // Reached when the re-check keeps failing. The participants are booked, so
+    // the booking stays PROVISIONAL and is re-checked later. A booking whose
+    // slot starts before the next attempt is canceled in the slot and FAILED,
+    // so it doesn't keep participants without a weather verdict.
+    private StepEffect retryWeatherRecheck() {
+        var bookingId = currentState().request().bookingId();
+        if (Instant.now().plus(RECHECK_RETRY_DELAY).isBefore(slotStart())) {
+            log.warn("Weather re-check of provisional booking {} failed, retrying in {}", bookingId, RECHECK_RETRY_DELAY);
+            scheduleRecheck(RECHECK_RETRY_DELAY);
+            return stepEffects().thenPause();
+        }
+        log.warn("Weather re-check of provisional booking {} failed before its slot, canceling it", bookingId);
+        try {
             componentClient
                     .forEventSourcedEntity(currentState().slotId())
-                    .method(BookingSlotEntity::bookSlot)
-                    .invoke(new BookingSlotEntity.Command.BookReservation(currentState().request().studentId(), currentState().request().aircraftId(), currentState().request().instructorId(), currentState().request().bookingId()));
+                    .method(BookingSlotEntity::cancelBooking)
+                    .invoke(bookingId);
+        } catch (CommandException e) {
+            // Already canceled
+        }
+        return stepEffects()
+                .updateState(currentState().withStatus(BookingStatus.FAILED))
+                .thenEnd();
+    }
 
-            log.info("Booking slot booked successfully");
+    private void scheduleRecheck(Duration delay) {
+        var bookingId = currentState().request().bookingId();
+        timers().createSingleTimer(
+                recheckTimerName(bookingId),
+                delay,
+                componentClient
+                        .forWorkflow(bookingId)
+                        .method(FlightBookingWorkflow::recheckWeather)
+                        .deferred());
+    }
 
+    // Confirms a provisional booking, or cancels it if the weather is unsuitable
+    private StepEffect recheckWeatherConditions() {
+        var bookingId = currentState().request().bookingId();
+        var slot = componentClient
+                .forEventSourcedEntity(currentState().slotId())
+                .method(BookingSlotEntity::getSlot)
+                .invoke();
+        if (slot.findBooking(bookingId).isEmpty()) {
+            log.info("Provisional booking {} was canceled before its weather check", bookingId);
+            return stepEffects()
+                    .updateState(currentState().withStatus(BookingStatus.CANCELED))
+                    .thenEnd();
         }
-        else{
-            log.info("Unable to book slot as weather conditions are dangerous");
 
+        var response = componentClient
+                .forAgent()
+                .inSession(bookingId)
+                .method(FlightConditionsAgent::query)
+                .invoke(new FlightConditionsAgent.WeatherQuery(currentState().slotId(), currentState().request().airfieldId()));
+        var newState = currentState().withWeatherCheck(Optional.of(response));
+
+        if (response.meetsRequirements()) {
+            log.info("Provisional booking {} confirmed", bookingId);
+            return stepEffects()
+                    .updateState(newState.withStatus(BookingStatus.BOOKED))
+                    .thenEnd();
+        }
+        log.info("Provisional booking {} canceled as weather conditions are dangerous", bookingId);
+        componentClient
+                .forEventSourcedEntity(currentState().slotId())
+                .method(BookingSlotEntity::cancelBooking)
+                .invoke(bookingId);
+        return stepEffects()
+                .updateState(newState.withStatus(BookingStatus.REJECTED_WEATHER))
+                .thenEnd();
+    }
+
+    private boolean beyondForecastHorizon() {
+        return slotStart().isAfter(Instant.now().plus(ForecastCache.FORECAST_HORIZON));
+    }
+
+    private Instant slotStart() {
+        return Instant.ofEpochSecond(SlotIds.toEpochHour(currentState().slotId()) * 3600);
+    }
+
+    private static String recheckTimerName(String bookingId) {
+        return "weather-recheck-" + bookingId;
+    }
+
+    // Confirms the hold. Returns false if the hold has already expired, in
+    // which case the participants have to be booked as usual. The expired hold
+    // is released first, otherwise it would keep its participants unavailable.
+    private boolean confirmHold() {
+        var bookingId = currentState().request().bookingId();
+        try {
+            componentClient
+                    .forEventSourcedEntity(currentState().slotId())
+                    .method(BookingSlotEntity::confirmHold)
+                    .invoke(bookingId);
+        } catch (CommandException e) {
+            log.info("Hold for booking {} expired before it was confirmed", bookingId);
+            componentClient
+                    .forEventSourcedEntity(currentState().slotId())
+                    .method(BookingSlotEntity::releaseHold)
+                    .invoke(new BookingSlotEntity.Command.ReleaseHold(bookingId, true));
+            timers().delete(HoldExpiryAction.timerName(bookingId));
+            return false;
+        }
+        timers().delete(HoldExpiryAction.timerName(bookingId));
+        return true;
+    }
+
+    private void releaseHold() {
+        var bookingId = currentState().request().bookingId();
+        componentClient
+                .forEventSourcedEntity(currentState().slotId())
+                .method(BookingSlotEntity::releaseHold)
+                .invoke(new BookingSlotEntity.Command.ReleaseHold(bookingId, false));
+        timers().delete(HoldExpiryAction.timerName(bookingId));
+    }
+
+    private BookingSlotEntity.Command.BookReservation reservation() {
+        var request = currentState().request();
+        return new BookingSlotEntity.Command.BookReservation(request.studentId(), request.aircraftId(), request.instructorId(), request.bookingId());
+    }
+
+    // Puts the booking on the slot's waitlist. The workflow pauses until the slot
+    // entity books it, which is signalled through waitlistMatched.
+    private StepEffect joinWaitlist() {
+        var request = currentState().request();
+        var result = componentClient
+                .forEventSourcedEntity(currentState().slotId())
+                .method(BookingSlotEntity::joinWaitlist)
+                .invoke(new BookingSlotEntity.Command.JoinWaitlist(
+                        reservation(),
+                        request.priority() == null ? 0 : request.priority()));
+
+        if (result == BookingSlotEntity.WaitlistResult.BOOKED) {
+            return booked();
         }
-        return stepEffects().thenEnd();
+        log.info("Booking {} is waitlisted for slot {}", request.bookingId(), currentState().slotId());
+        return stepEffects()
+                .updateState(currentState().withStatus(BookingStatus.WAITLISTED))
+                .thenPause();
+    }
 
+    // Reached when a step has exhausted its retries
+    private StepEffect failBooking() {
+        log.warn("Booking {} for slot {} failed", currentState().request().bookingId(), currentState().slotId());
+        // Any hold is left to the expiry timer, the slot entity may be what is failing
+        return stepEffects()
+                .updateState(currentState().withStatus(BookingStatus.FAILED))
+                .thenEnd();
     }
 
 
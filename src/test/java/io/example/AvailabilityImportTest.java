@@ -0,0 +1,57 @@
+package io.example;
+
+import io.example.api.AvailabilityImport;
+import io.example.api.AvailabilityImport.Format;
+import io.example.domain.Participant;
+import io.example.domain.SlotIds;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AvailabilityImportTest {
+
+    private static final long NOW = SlotIds.toEpochHour("2025-12-30-08");
+
+    @Test
+    public void parsesCsvLines() {
+        assertTrue(AvailabilityImport.parse(1, "slotId,participantId,participantType", Format.CSV, NOW).isSkipped());
+
+        var line = AvailabilityImport.parse(2, "2025-12-31-09, alice ,instructor", Format.CSV, NOW);
+        assertTrue(line.isValid());
+        assertEquals("2025-12-31-09", line.slotId());
+        assertEquals(new Participant("alice", Participant.ParticipantType.INSTRUCTOR), line.participant());
+    }
+
+    @Test
+    public void parsesNdjsonLines() {
+        var line = AvailabilityImport.parse(1,
+                "{\"slotId\":\"2025-12-31-09\",\"participantId\":\"g-abcd\",\"participantType\":\"AIRCRAFT\"}",
+                Format.NDJSON, NOW);
+        assertTrue(line.isValid());
+        assertEquals(Participant.ParticipantType.AIRCRAFT, line.participant().participantType());
+    }
+
+    @Test
+    public void reportsInvalidLines() {
+        assertFalse(AvailabilityImport.parse(2, "2025-12-31,alice,instructor", Format.CSV, NOW).isValid());
+        assertFalse(AvailabilityImport.parse(3, "2025-12-29-09,alice,instructor", Format.CSV, NOW).isValid());
+        assertFalse(AvailabilityImport.parse(4, "2025-12-31-09,alice,pilot", Format.CSV, NOW).isValid());
+        assertFalse(AvailabilityImport.parse(5, "2025-12-31-09,alice", Format.CSV, NOW).isValid());
+        assertFalse(AvailabilityImport.parse(6, "{not json", Format.NDJSON, NOW).isValid());
+
+        var line = AvailabilityImport.parse(7, "2025-12-29-09,alice,instructor", Format.CSV, NOW);
+        assertEquals(7, line.lineNumber());
+        assertEquals("Slot 2025-12-29-09 is in the past", line.error());
+        assertTrue(AvailabilityImport.parse(8, "   ", Format.CSV, NOW).isSkipped());
+    }
+
+    @Test
+    public void rejectsLongLines() {
+        var longId = "a".repeat(AvailabilityImport.MAX_LINE_LENGTH);
+        var line = AvailabilityImport.parse(9, "2025-12-31-09," + longId + ",student", Format.CSV, NOW);
+        assertFalse(line.isValid());
+        assertEquals("Line is longer than " + AvailabilityImport.MAX_LINE_LENGTH + " characters", line.error());
+    }
+}
@@ -0,0 +1,141 @@
+package io.example;
+
+import akka.javasdk.JsonSupport;
+import akka.javasdk.testkit.TestKit;
+import akka.javasdk.testkit.TestKitSupport;
+import akka.javasdk.testkit.TestModelProvider;
+import io.example.api.FlightEndpoint;
+import io.example.application.BookingSlotEntity;
+import io.example.application.FlightConditionsAgent;
+import io.example.domain.FlightBookingState;
+import io.example.domain.FlightBookingState.BookingStatus;
+import io.example.domain.Participant;
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.SlotIds;
+import io.example.domain.Timeslot;
+import io.example.workflows.FlightBookingWorkflow;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Bookings beyond the forecast horizon are booked PROVISIONAL without asking
+// the agent. The tests trigger the re-check directly instead of waiting for
+// its timer.
+public class DeferredWeatherCheckTest extends TestKitSupport {
+
+    private final TestModelProvider weatherModel = new TestModelProvider();
+
+    @Override
+    protected TestKit.Settings testKitSettings() {
+        return TestKit.Settings.DEFAULT
+                .withModelProvider(FlightConditionsAgent.class, weatherModel);
+    }
+
+    @Test
+    public void provisionalBookingIsConfirmedByGoodWeather() {
+        var slotId = slotInDays(7);
+        var booking = startProvisionalBooking(slotId, "deferred-good");
+        assertTrue(booking.weatherDeferred());
+        assertFalse(slot(slotId).findBooking("deferred-good").isEmpty());
+
+        weatherModel.fixedResponse(report(slotId, true));
+        recheck("deferred-good");
+        awaitStatus("deferred-good", BookingStatus.BOOKED);
+        assertFalse(slot(slotId).findBooking("deferred-good").isEmpty());
+
+        // A late timer for a booking that is no longer provisional is ignored
+        recheck("deferred-good");
+        assertEquals(BookingStatus.BOOKED, booking("deferred-good").status());
+    }
+
+    @Test
+    public void provisionalBookingIsCanceledByBadWeather() {
+        var slotId = slotInDays(8);
+        startProvisionalBooking(slotId, "deferred-bad");
+
+        weatherModel.fixedResponse(report(slotId, false));
+        recheck("deferred-bad");
+        awaitStatus("deferred-bad", BookingStatus.REJECTED_WEATHER);
+        assertTrue(slot(slotId).findBooking("deferred-bad").isEmpty());
+    }
+
+    @Test
+    public void provisionalBookingCanceledBeforeRecheckEndsCanceled() {
+        var slotId = slotInDays(9);
+        startProvisionalBooking(slotId, "deferred-canceled");
+
+        componentClient
+                .forEventSourcedEntity(slotId)
+                .method(BookingSlotEntity::cancelBooking)
+                .invoke("deferred-canceled");
+        recheck("deferred-canceled");
+        awaitStatus("deferred-canceled", BookingStatus.CANCELED);
+    }
+
+    private FlightBookingState startProvisionalBooking(String slotId, String bookingId) {
+        markAvailable(slotId, "student-" + bookingId, ParticipantType.STUDENT);
+        markAvailable(slotId, "aircraft-" + bookingId, ParticipantType.AIRCRAFT);
+        markAvailable(slotId, "instructor-" + bookingId, ParticipantType.INSTRUCTOR);
+
+        var request = new FlightEndpoint.BookingRequest(
+                "student-" + bookingId, "aircraft-" + bookingId, "instructor-" + bookingId, bookingId,
+                null, null, null, null, null, null);
+        componentClient
+                .forWorkflow(bookingId)
+                .method(FlightBookingWorkflow::startWorkflow)
+                .invoke(new FlightBookingWorkflow.BookingCommand(slotId, request));
+        awaitStatus(bookingId, BookingStatus.PROVISIONAL);
+        return booking(bookingId);
+    }
+
+    private void markAvailable(String slotId, String participantId, ParticipantType type) {
+        componentClient
+                .forEventSourcedEntity(slotId)
+                .method(BookingSlotEntity::markSlotAvailable)
+                .invoke(new BookingSlotEntity.Command.MarkSlotAvailable(new Participant(participantId, type)));
+    }
+
+    private void recheck(String bookingId) {
+        componentClient
+                .forWorkflow(bookingId)
+                .method(FlightBookingWorkflow::recheckWeather)
+                .invoke();
+    }
+
+    private void awaitStatus(String bookingId, BookingStatus status) {
+        Awaitility.await()
+                .ignoreExceptions()
+                .atMost(10, TimeUnit.SECONDS)
+                .untilAsserted(() -> assertEquals(status, booking(bookingId).status()));
+    }
+
+    private FlightBookingState booking(String bookingId) {
+        return componentClient
+                .forWorkflow(bookingId)
+                .method(FlightBookingWorkflow::getBooking)
+                .invoke();
+    }
+
+    private Timeslot slot(String slotId) {
+        return componentClient
+                .forEventSourcedEntity(slotId)
+                .method(BookingSlotEntity::getSlot)
+                .invoke();
+    }
+
+    private static String slotInDays(int days) {
+        return SlotIds.fromEpochHour(Instant.now().plus(Duration.ofDays(days)).getEpochSecond() / 3600);
+    }
+
+    private static String report(String slotId, boolean meetsRequirements) {
+        return JsonSupport.encodeToString(
+                new FlightConditionsAgent.ConditionsReport(slotId, meetsRequirements, 0, 10, 10, 10000, 0));
+    }
+}
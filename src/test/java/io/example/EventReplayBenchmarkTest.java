@@ -0,0 +1,50 @@
+package io.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.example.domain.BookingEvent;
+import io.example.domain.CompactEventMigration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Compares replaying legacy events, which are migrated on the way, with the
+// compact encoding. Not part of the regular test run, enable it with
+// `mvn test -Dbenchmarks=true`.
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+public class EventReplayBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(EventReplayBenchmarkTest.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int REPLAY_EVENTS = 100_000;
+
+    @Test
+    public void replayLegacyAndCompactEvents() throws Exception {
+        var event = mapper.treeToValue(
+                new CompactEventMigration.ParticipantBooked()
+                        .transform(0, mapper.readTree(EventSerializationTest.LEGACY_BOOKED)),
+                BookingEvent.ParticipantBooked.class);
+        byte[] compact = mapper.writeValueAsBytes(event);
+
+        long legacyNanos = replay(() -> {
+            var node = (ObjectNode) mapper.readTree(EventSerializationTest.LEGACY_BOOKED);
+            var migrated = new CompactEventMigration.ParticipantBooked().transform(0, node);
+            return mapper.treeToValue(migrated, BookingEvent.ParticipantBooked.class);
+        });
+        long compactNanos = replay(() -> mapper.readValue(compact, BookingEvent.ParticipantBooked.class));
+        log.info("Replay of {} events: {} ms legacy (migrated), {} ms compact",
+                REPLAY_EVENTS, legacyNanos / 1_000_000, compactNanos / 1_000_000);
+    }
+
+    private interface Decode {
+        Object decode() throws Exception;
+    }
+
+    private static long replay(Decode decode) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < REPLAY_EVENTS; i++) {
+            decode.decode();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,58 @@
+package io.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.example.domain.BookingEvent;
+import io.example.domain.CompactEventMigration;
+import io.example.domain.Participant.ParticipantType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventSerializationTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static final String LEGACY_TYPE_NAME = "reservation-booked";
+    static final String LEGACY_BOOKED = """
+            {"slotId":"2025-12-30-10","participantId":"3f2b8c1e-1d7a-4b8e-9c55-0b6f2d1e7a44","participantType":"INSTRUCTOR","bookingId":"9a1c7e52-44f1-4f0e-8b2d-6c3e5a9d1f07"}""";
+
+    @Test
+    public void legacyEventsAreMigrated() throws Exception {
+        var migrated = new CompactEventMigration.ParticipantBooked()
+                .transform(0, mapper.readTree(LEGACY_BOOKED));
+        var event = mapper.treeToValue(migrated, BookingEvent.ParticipantBooked.class);
+
+        assertEquals("2025-12-30-10", event.slotId());
+        assertEquals(ParticipantType.INSTRUCTOR, event.participantType());
+        assertEquals("9a1c7e52-44f1-4f0e-8b2d-6c3e5a9d1f07", event.bookingId());
+        assertTrue(new CompactEventMigration.ParticipantBooked().supportedClassNames().contains(LEGACY_TYPE_NAME));
+    }
+
+    @Test
+    public void compactEncodingIsSmaller() throws Exception {
+        var event = mapper.readValue(
+                mapper.writeValueAsString(new CompactEventMigration.ParticipantBooked()
+                        .transform(0, mapper.readTree(LEGACY_BOOKED))),
+                BookingEvent.ParticipantBooked.class);
+
+        byte[] compact = mapper.writeValueAsBytes(event);
+        assertEquals(event, mapper.readValue(compact, BookingEvent.ParticipantBooked.class));
+
+        // The type name is stored with every event, so it counts towards its size
+        int legacyBytes = LEGACY_BOOKED.getBytes().length + LEGACY_TYPE_NAME.length();
+        int compactBytes = compact.length + "sb".length();
+        assertEquals(181, legacyBytes);
+        assertEquals(106, compactBytes);
+    }
+
+    @Test
+    public void participantTypeIsStoredAsOrdinal() throws Exception {
+        var event = new BookingEvent.ParticipantMarkedAvailable("2025-12-30-10", "s1", ParticipantType.AIRCRAFT);
+        var json = mapper.readValue(mapper.writeValueAsString(event), Map.class);
+
+        assertEquals(ParticipantType.AIRCRAFT.ordinal(), json.get("t"));
+        assertEquals(event, mapper.convertValue(json, BookingEvent.ParticipantMarkedAvailable.class));
+    }
+}
@@ -0,0 +1,153 @@
+package io.example;
+
+import io.example.application.CircuitBreaker;
+import io.example.application.FlightConditionsAgent;
+import io.example.application.ForecastCache;
+import io.example.domain.Airfield;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ForecastCacheTest {
+    private static final String FORECAST = """
+            {
+              "forecastHours": [
+                {
+                  "interval": { "startTime": "2025-12-30T10:00:00Z", "endTime": "2025-12-30T11:00:00Z" },
+                  "thunderstormProbability": 0
+                }
+              ]
+            }
+            """;
+
+    @Test
+    public void nearbyAirfieldsShareOneFetch() {
+        var fetches = new AtomicInteger();
+        FlightConditionsAgent.WeatherService service = url -> {
+            fetches.incrementAndGet();
+            return FORECAST;
+        };
+        var cache = new ForecastCache(service, 0.5, Duration.ofMinutes(30), Clock.systemUTC());
+
+        var first = new Airfield("a", "A", 51.60, 0.10);
+        var second = new Airfield("b", "B", 51.70, 0.20);
+        var farAway = new Airfield("c", "C", 44.27, -71.30);
+
+        assertTrue(cache.forecastFor(first, "2025-12-30-10").isPresent());
+        assertTrue(cache.forecastFor(second, "2025-12-30-10").isPresent());
+        assertTrue(cache.forecastFor(first, "2025-12-31-10").isEmpty());
+        assertEquals(1, fetches.get());
+
+        cache.forecastFor(farAway, "2025-12-30-10");
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void expiredForecastIsFetchedAgain() {
+        var fetches = new AtomicInteger();
+        FlightConditionsAgent.WeatherService service = url -> {
+            fetches.incrementAndGet();
+            return FORECAST;
+        };
+        var clock = new MutableClock(Instant.parse("2025-12-30T08:00:00Z"));
+        var cache = new ForecastCache(service, 0.5, Duration.ofMinutes(30), clock);
+        var airfield = new Airfield("a", "A", 51.60, 0.10);
+
+        cache.forecastFor(airfield, "2025-12-30-10");
+        clock.advance(Duration.ofMinutes(31));
+        cache.forecastFor(airfield, "2025-12-30-10");
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void responseWithoutForecastHoursIsNotCached() {
+        var fetches = new AtomicInteger();
+        var failing = new AtomicBoolean(false);
+        FlightConditionsAgent.WeatherService service = url -> {
+            fetches.incrementAndGet();
+            return failing.get() ? "{\"error\": {\"code\": 429, \"status\": \"RESOURCE_EXHAUSTED\"}}" : FORECAST;
+        };
+        var clock = new MutableClock(Instant.parse("2025-12-30T08:00:00Z"));
+        var cache = new ForecastCache(service, 0.5, Duration.ofMinutes(30), clock);
+        var airfield = new Airfield("a", "A", 51.60, 0.10);
+
+        assertFalse(cache.forecastFor(airfield, "2025-12-30-10").get().contains("stale"));
+
+        // The error payload is not cached and keeps the last forecast as fallback
+        failing.set(true);
+        clock.advance(Duration.ofMinutes(31));
+        assertTrue(cache.forecastFor(airfield, "2025-12-30-10").get().contains("\"stale\":true"));
+        assertTrue(cache.forecastFor(airfield, "2025-12-30-10").get().contains("\"stale\":true"));
+        assertEquals(3, fetches.get());
+
+        failing.set(false);
+        assertFalse(cache.forecastFor(airfield, "2025-12-30-10").get().contains("stale"));
+        assertEquals(4, fetches.get());
+    }
+
+    @Test
+    public void emptyForecastKeepsTheLastKnownHours() {
+        var responses = new ArrayDeque<>(List.of(FORECAST, "{\"forecastHours\": []}"));
+        FlightConditionsAgent.WeatherService service = url -> {
+            if (responses.isEmpty()) {
+                throw new RuntimeException("Weather API responded with status 503");
+            }
+            return responses.poll();
+        };
+        var clock = new MutableClock(Instant.parse("2025-12-30T08:00:00Z"));
+        var cache = new ForecastCache(service, 0.5, Duration.ofMinutes(30), clock);
+        var airfield = new Airfield("a", "A", 51.60, 0.10);
+
+        assertFalse(cache.forecastFor(airfield, "2025-12-30-10").get().contains("stale"));
+        clock.advance(Duration.ofMinutes(31));
+        assertTrue(cache.forecastFor(airfield, "2025-12-30-10").isEmpty());
+        clock.advance(Duration.ofMinutes(31));
+        assertTrue(cache.forecastFor(airfield, "2025-12-30-10").get().contains("\"stale\":true"));
+    }
+
+    @Test
+    public void servesStaleForecastWhileBreakerIsOpen() {
+        var fetches = new AtomicInteger();
+        var available = new AtomicBoolean(true);
+        FlightConditionsAgent.WeatherService service = url -> {
+            fetches.incrementAndGet();
+            if (!available.get()) {
+                throw new RuntimeException("Weather API responded with status 503");
+            }
+            return FORECAST;
+        };
+        var clock = new MutableClock(Instant.parse("2025-12-30T08:00:00Z"));
+        var breaker = new CircuitBreaker("test.breaker", 3, Duration.ofSeconds(30), clock);
+        var cache = new ForecastCache(service, "http://localhost", 0.5, Duration.ofMinutes(30), clock, breaker);
+        var airfield = new Airfield("a", "A", 51.60, 0.10);
+
+        assertFalse(cache.forecastFor(airfield, "2025-12-30-10").get().contains("stale"));
+
+        available.set(false);
+        clock.advance(Duration.ofMinutes(31));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.forecastFor(airfield, "2025-12-30-10").get().contains("\"stale\":true"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        // Fails fast while open
+        assertTrue(cache.forecastFor(airfield, "2025-12-30-10").get().contains("\"stale\":true"));
+        assertEquals(4, fetches.get());
+
+        available.set(true);
+        clock.advance(Duration.ofSeconds(31));
+        assertFalse(cache.forecastFor(airfield, "2025-12-30-10").get().contains("stale"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
@@ -0,0 +1,38 @@
+package io.example;
+
+import io.example.api.IdempotencyStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyStoreTest {
+
+    @Test
+    public void retryReturnsOriginalValue() {
+        var store = new IdempotencyStore<String>(10, Duration.ofMinutes(5), new MutableClock(Instant.now()));
+
+        assertEquals("first", store.putIfAbsent("booking-1", "first"));
+        assertEquals("first", store.putIfAbsent("booking-1", "second"));
+        assertEquals("first", store.get("booking-1").get());
+    }
+
+    @Test
+    public void entriesExpireAndAreBounded() {
+        var clock = new MutableClock(Instant.parse("2025-12-30T08:00:00Z"));
+        var store = new IdempotencyStore<String>(2, Duration.ofMinutes(5), clock);
+
+        store.putIfAbsent("a", "a");
+        clock.advance(Duration.ofMinutes(6));
+        assertTrue(store.get("a").isEmpty());
+
+        store.putIfAbsent("b", "b");
+        store.putIfAbsent("c", "c");
+        store.putIfAbsent("d", "d");
+        assertEquals(2, store.size());
+        assertTrue(store.get("b").isEmpty());
+    }
+}
@@ -0,0 +1,47 @@
+package io.example;
+
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.ParticipantSchedule;
+import io.example.domain.ParticipantSchedule.SlotStatus;
+import io.example.domain.SlotIds;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParticipantScheduleTest {
+
+    @Test
+    public void slotIdsRoundTripThroughEpochHours() {
+        long hour = SlotIds.toEpochHour("2025-12-30-10");
+        assertEquals("2025-12-30-10", SlotIds.fromEpochHour(hour));
+        assertEquals(hour + 1, SlotIds.toEpochHour("2025-12-30-11"));
+    }
+
+    @Test
+    public void eachHourHasOneStatus() {
+        long hour = SlotIds.toEpochHour("2025-12-30-10");
+        var schedule = ParticipantSchedule.empty("instructor-1")
+                .withStatus(ParticipantType.INSTRUCTOR, hour, SlotStatus.AVAILABLE, null)
+                .withStatus(ParticipantType.INSTRUCTOR, hour, SlotStatus.BOOKED, "booking-1");
+
+        var entry = schedule.entryAt(hour).get();
+        assertEquals(SlotStatus.BOOKED, entry.status());
+        assertEquals("booking-1", entry.bookingId());
+        assertTrue(schedule.entriesWithStatus(SlotStatus.AVAILABLE, hour, hour).isEmpty());
+    }
+
+    @Test
+    public void rangeScanReturnsHoursInOrder() {
+        long start = SlotIds.toEpochHour("2025-12-30-00");
+        var schedule = ParticipantSchedule.empty("aircraft-1");
+        for (long hour = start; hour < start + 200; hour += 10) {
+            schedule = schedule.withStatus(ParticipantType.AIRCRAFT, hour, SlotStatus.AVAILABLE, null);
+        }
+
+        var entries = schedule.entriesWithStatus(SlotStatus.AVAILABLE, start + 15, start + 95);
+        assertEquals(8, entries.size());
+        assertEquals("2025-12-30-20", entries.get(0).slotId());
+        assertEquals(start + 90, entries.get(7).epochHour());
+    }
+}
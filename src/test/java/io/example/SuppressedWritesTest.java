@@ -0,0 +1,98 @@
+package io.example;
+
+import akka.javasdk.testkit.EventSourcedTestKit;
+import io.example.application.BookingSlotEntity;
+import io.example.application.OperationalMetrics;
+import io.example.application.ParticipantSlotEntity;
+import io.example.application.ParticipantSlotEntity.Commands;
+import io.example.domain.Participant;
+import io.example.domain.Participant.ParticipantType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Commands that would leave the state as it is are answered without
+// persisting an event, and counted as suppressed writes.
+public class SuppressedWritesTest {
+
+    private static final String SLOT_ID = "2030-01-01-10";
+
+    @Test
+    public void repeatedMarkAndUnmarkPersistNothing() {
+        var testKit = EventSourcedTestKit.of(ParticipantSlotEntity::new);
+        var suppressed = OperationalMetrics.get(ParticipantSlotEntity.SUPPRESSED_WRITES);
+
+        var mark = new Commands.MarkAvailable(SLOT_ID, "alice", ParticipantType.STUDENT);
+        assertTrue(testKit.method(ParticipantSlotEntity::markAvailable).invoke(mark).didPersistEvents());
+        assertFalse(testKit.method(ParticipantSlotEntity::markAvailable).invoke(mark).didPersistEvents());
+
+        var unmark = new Commands.UnmarkAvailable(SLOT_ID, "alice", ParticipantType.STUDENT);
+        assertTrue(testKit.method(ParticipantSlotEntity::unmarkAvailable).invoke(unmark).didPersistEvents());
+        assertFalse(testKit.method(ParticipantSlotEntity::unmarkAvailable).invoke(unmark).didPersistEvents());
+
+        assertEquals(suppressed + 2, OperationalMetrics.get(ParticipantSlotEntity.SUPPRESSED_WRITES));
+    }
+
+    @Test
+    public void bookAndCancelOfAnotherBookingArePersisted() {
+        var testKit = EventSourcedTestKit.of(ParticipantSlotEntity::new);
+        var suppressed = OperationalMetrics.get(ParticipantSlotEntity.SUPPRESSED_WRITES);
+
+        var book = new Commands.Book(SLOT_ID, "alice", ParticipantType.STUDENT, "b1");
+        assertTrue(testKit.method(ParticipantSlotEntity::book).invoke(book).didPersistEvents());
+        assertFalse(testKit.method(ParticipantSlotEntity::book).invoke(book).didPersistEvents());
+        var otherBook = new Commands.Book(SLOT_ID, "alice", ParticipantType.STUDENT, "b2");
+        assertTrue(testKit.method(ParticipantSlotEntity::book).invoke(otherBook).didPersistEvents());
+
+        var cancel = new Commands.Cancel(SLOT_ID, "alice", ParticipantType.STUDENT, "b2");
+        assertTrue(testKit.method(ParticipantSlotEntity::cancel).invoke(cancel).didPersistEvents());
+        assertFalse(testKit.method(ParticipantSlotEntity::cancel).invoke(cancel).didPersistEvents());
+        var otherCancel = new Commands.Cancel(SLOT_ID, "alice", ParticipantType.STUDENT, "b3");
+        assertTrue(testKit.method(ParticipantSlotEntity::cancel).invoke(otherCancel).didPersistEvents());
+
+        assertEquals(suppressed + 2, OperationalMetrics.get(ParticipantSlotEntity.SUPPRESSED_WRITES));
+    }
+
+    @Test
+    public void repeatedSlotAvailabilityPersistsNothing() {
+        var testKit = EventSourcedTestKit.of(SLOT_ID, BookingSlotEntity::new);
+        var suppressed = OperationalMetrics.get(BookingSlotEntity.SUPPRESSED_WRITES);
+        var alice = new Participant("alice", ParticipantType.STUDENT);
+
+        var mark = new BookingSlotEntity.Command.MarkSlotAvailable(alice);
+        assertTrue(testKit.method(BookingSlotEntity::markSlotAvailable).invoke(mark).didPersistEvents());
+        assertFalse(testKit.method(BookingSlotEntity::markSlotAvailable).invoke(mark).didPersistEvents());
+
+        var unmark = new BookingSlotEntity.Command.UnmarkSlotAvailable(alice);
+        assertTrue(testKit.method(BookingSlotEntity::unmarkSlotAvailable).invoke(unmark).didPersistEvents());
+        assertFalse(testKit.method(BookingSlotEntity::unmarkSlotAvailable).invoke(unmark).didPersistEvents());
+
+        assertEquals(suppressed + 2, OperationalMetrics.get(BookingSlotEntity.SUPPRESSED_WRITES));
+    }
+
+    @Test
+    public void unmarkWhileHeldIsKeptForTheRelease() {
+        var testKit = EventSourcedTestKit.of(SLOT_ID, BookingSlotEntity::new);
+        var student = new Participant("s1", ParticipantType.STUDENT);
+        var aircraft = new Participant("a1", ParticipantType.AIRCRAFT);
+        var instructor = new Participant("i1", ParticipantType.INSTRUCTOR);
+        for (var participant : List.of(student, aircraft, instructor)) {
+            testKit.method(BookingSlotEntity::markSlotAvailable)
+                    .invoke(new BookingSlotEntity.Command.MarkSlotAvailable(participant));
+        }
+        testKit.method(BookingSlotEntity::holdSlot).invoke(new BookingSlotEntity.Command.HoldReservation(
+                new BookingSlotEntity.Command.BookReservation("s1", "a1", "i1", "held"), Long.MAX_VALUE));
+
+        var unmark = new BookingSlotEntity.Command.UnmarkSlotAvailable(instructor);
+        assertTrue(testKit.method(BookingSlotEntity::unmarkSlotAvailable).invoke(unmark).didPersistEvents());
+        assertFalse(testKit.method(BookingSlotEntity::unmarkSlotAvailable).invoke(unmark).didPersistEvents());
+
+        testKit.method(BookingSlotEntity::releaseHold).invoke(new BookingSlotEntity.Command.ReleaseHold("held", false));
+        assertTrue(testKit.getState().isWaiting("a1", ParticipantType.AIRCRAFT));
+        assertFalse(testKit.getState().isWaiting("i1", ParticipantType.INSTRUCTOR));
+    }
+}
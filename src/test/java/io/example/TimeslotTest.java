@@ -0,0 +1,168 @@
+package io.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.example.domain.BookingEvent;
+import io.example.domain.Participant;
+import io.example.domain.Participant.ParticipantType;
+import io.example.domain.SelectionPolicy;
+import io.example.domain.Timeslot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeslotTest {
+    private static final String SLOT = "2025-12-30-10";
+
+    @Test
+    public void bookingMovesParticipantsOutOfAvailable() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR));
+        assertTrue(slot.isBookable("s1", "a1", "i1"));
+        assertFalse(slot.isWaiting("s1", ParticipantType.INSTRUCTOR));
+
+        slot = slot.book(new BookingEvent.ParticipantBooked(SLOT, "s1", ParticipantType.STUDENT, "b1"))
+                .book(new BookingEvent.ParticipantBooked(SLOT, "a1", ParticipantType.AIRCRAFT, "b1"))
+                .book(new BookingEvent.ParticipantBooked(SLOT, "i1", ParticipantType.INSTRUCTOR, "b1"));
+        assertFalse(slot.isBookable("s1", "a1", "i1"));
+        assertEquals(3, slot.findBooking("b1").size());
+
+        slot = slot.cancelBooking("b1");
+        assertTrue(slot.findBooking("b1").isEmpty());
+        assertTrue(slot.available().isEmpty());
+    }
+
+    @Test
+    public void countsParticipantsPerType() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s2", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT));
+        assertEquals(2, slot.availableCount(ParticipantType.STUDENT));
+        assertFalse(slot.hasAvailableOfEveryType());
+
+        slot = slot.reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR));
+        assertTrue(slot.hasAvailableOfEveryType());
+
+        slot = slot.book(new BookingEvent.ParticipantBooked(SLOT, "s1", ParticipantType.STUDENT, "b1"));
+        assertEquals(1, slot.availableCount(ParticipantType.STUDENT));
+        assertEquals(1, slot.bookedCount(ParticipantType.STUDENT));
+        assertEquals(0, slot.bookedCount(ParticipantType.AIRCRAFT));
+    }
+
+    @Test
+    public void selectsAvailableParticipantByPolicy() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a2", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a3", ParticipantType.AIRCRAFT));
+
+        assertEquals("a1", slot.selectAvailable(ParticipantType.AIRCRAFT, List.of(), SelectionPolicy.PREFERRED_FIRST, Map.of()).get());
+        assertEquals("a3", slot.selectAvailable(ParticipantType.AIRCRAFT, List.of("a9", "a3", "a2"), SelectionPolicy.PREFERRED_FIRST, Map.of()).get());
+        assertEquals("a2", slot.selectAvailable(ParticipantType.AIRCRAFT, List.of("a3", "a2"), SelectionPolicy.LEAST_UTILIZED, Map.of("a3", 12, "a2", 4)).get());
+        assertTrue(slot.selectAvailable(ParticipantType.AIRCRAFT, List.of("a9"), SelectionPolicy.PREFERRED_FIRST, Map.of()).isEmpty());
+        assertTrue(slot.selectAvailable(ParticipantType.INSTRUCTOR, List.of(), SelectionPolicy.LEAST_UTILIZED, Map.of()).isEmpty());
+    }
+
+    @Test
+    public void waitlistIsMatchedInPriorityOrder() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s2", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .joinWaitlist(new BookingEvent.WaitlistJoined(0, "s1", "a1", "i1", "low", 0))
+                .joinWaitlist(new BookingEvent.WaitlistJoined(0, "s2", "a1", "i1", "high", 5));
+
+        assertTrue(slot.matchWaitlist((Participant) null).isEmpty());
+
+        // Both bookings need the same aircraft, so only the higher priority one is matched
+        var matched = slot.matchWaitlist(new Participant("i1", ParticipantType.INSTRUCTOR));
+        assertEquals(1, matched.size());
+        assertEquals("high", matched.get(0).bookingId());
+
+        slot = slot.leaveWaitlist("high");
+        assertFalse(slot.isWaitlisted("high"));
+        assertTrue(slot.isWaitlisted("low"));
+    }
+
+    @Test
+    public void releasedHoldParticipantsMatchTheWaitlist() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s2", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR))
+                .hold(new BookingEvent.ParticipantsHeld(0, "s1", "a1", "i1", "held", Long.MAX_VALUE))
+                .joinWaitlist(new BookingEvent.WaitlistJoined(0, "s2", "a1", "i1", "waiting", 0));
+
+        assertTrue(slot.matchWaitlist((Participant) null).isEmpty());
+
+        var released = List.of(
+                new Participant("s1", ParticipantType.STUDENT),
+                new Participant("a1", ParticipantType.AIRCRAFT),
+                new Participant("i1", ParticipantType.INSTRUCTOR));
+        var matched = slot.matchWaitlist(released);
+        assertEquals(1, matched.size());
+        assertEquals("waiting", matched.get(0).bookingId());
+    }
+
+    @Test
+    public void participantUnmarkedWhileHeldIsNotReleased() {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR))
+                .hold(new BookingEvent.ParticipantsHeld(0, "s1", "a1", "i1", "held", Long.MAX_VALUE));
+        assertTrue(slot.isHeld("i1", ParticipantType.INSTRUCTOR));
+
+        slot = slot.unreserve(new BookingEvent.ParticipantUnmarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR));
+        assertFalse(slot.isHeld("i1", ParticipantType.INSTRUCTOR));
+        assertTrue(slot.isHeld("a1", ParticipantType.AIRCRAFT));
+        assertEquals(
+                List.of(new Participant("s1", ParticipantType.STUDENT), new Participant("a1", ParticipantType.AIRCRAFT)),
+                slot.findHold("held").get().releasedParticipants());
+
+        slot = slot.releaseHold("held");
+        assertTrue(slot.isWaiting("s1", ParticipantType.STUDENT));
+        assertTrue(slot.isWaiting("a1", ParticipantType.AIRCRAFT));
+        assertFalse(slot.isWaiting("i1", ParticipantType.INSTRUCTOR));
+    }
+
+    @Test
+    public void holdsRoundTripThroughJson() throws Exception {
+        var slot = Timeslot.empty()
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "s1", ParticipantType.STUDENT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "a1", ParticipantType.AIRCRAFT))
+                .reserve(new BookingEvent.ParticipantMarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR))
+                .hold(new BookingEvent.ParticipantsHeld(0, "s1", "a1", "i1", "held", Long.MAX_VALUE))
+                .unreserve(new BookingEvent.ParticipantUnmarkedAvailable(SLOT, "i1", ParticipantType.INSTRUCTOR));
+        var mapper = new ObjectMapper();
+        assertEquals(slot.holds(), mapper.readValue(mapper.writeValueAsString(slot), Timeslot.class).holds());
+    }
+
+    @Test
+    public void readsTheExistingSerializedForm() throws Exception {
+        var json = """
+                {
+                  "bookings": [
+                    { "participant": { "id": "s1", "participantType": "STUDENT" }, "bookingId": "b1" }
+                  ],
+                  "available": [
+                    { "id": "a2", "participantType": "AIRCRAFT" }
+                  ]
+                }
+                """;
+        var mapper = new ObjectMapper();
+        var slot = mapper.readValue(json, Timeslot.class);
+
+        assertTrue(slot.isWaiting("a2", ParticipantType.AIRCRAFT));
+        assertEquals(new Participant("s1", ParticipantType.STUDENT), slot.findBooking("b1").get(0).participant());
+        assertEquals(slot.holds(), mapper.readValue(mapper.writeValueAsString(slot), Timeslot.class).holds());
+    }
+}
@@ -0,0 +1,182 @@
+package io.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An embeddable local stub of the Google Weather API `forecast/hours:lookup` endpoint. It serves
+ * generated hourly forecasts starting at the current hour, and can inject latency, errors and
+ * timeouts. Point the forecast cache at it through its base URL, or set the
+ * `weather.api.base-url` system property / `WEATHER_API_BASE_URL` environment variable.
+ */
+public class WeatherApiStub implements AutoCloseable {
+
+    public static final String FORECAST_PATH = "/v1/forecast/hours:lookup";
+
+    /** Produces the latency of each response. */
+    public interface Latency {
+        Duration next(Random random);
+
+        static Latency none() {
+            return random -> Duration.ZERO;
+        }
+
+        static Latency fixed(Duration latency) {
+            return random -> latency;
+        }
+
+        static Latency uniform(Duration min, Duration max) {
+            return random -> Duration.ofMillis(min.toMillis() + (long) (random.nextDouble() * (max.toMillis() - min.toMillis())));
+        }
+
+        // Long tailed latency around the given median
+        static Latency logNormal(Duration median, double sigma) {
+            return random -> Duration.ofMillis((long) (median.toMillis() * Math.exp(sigma * random.nextGaussian())));
+        }
+    }
+
+    /**
+     * @param latency       latency added to every response
+     * @param errorRate     fraction of requests answered with a 500
+     * @param timeoutRate   fraction of requests that are held for `timeoutDelay` before answering
+     * @param timeoutDelay  how long a timed out request is held, longer than the client timeout
+     * @param forecastHours number of hours in each forecast, which sets the payload size
+     */
+    public record Settings(Latency latency, double errorRate, double timeoutRate, Duration timeoutDelay, int forecastHours) {
+        public static Settings healthy() {
+            return new Settings(Latency.none(), 0, 0, Duration.ofSeconds(30), 240);
+        }
+
+        public Settings withLatency(Latency latency) {
+            return new Settings(latency, errorRate, timeoutRate, timeoutDelay, forecastHours);
+        }
+
+        public Settings withErrorRate(double errorRate) {
+            return new Settings(latency, errorRate, timeoutRate, timeoutDelay, forecastHours);
+        }
+
+        public Settings withTimeouts(double timeoutRate, Duration timeoutDelay) {
+            return new Settings(latency, errorRate, timeoutRate, timeoutDelay, forecastHours);
+        }
+
+        public Settings withForecastHours(int forecastHours) {
+            return new Settings(latency, errorRate, timeoutRate, timeoutDelay, forecastHours);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Settings settings;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger timeouts = new AtomicInteger();
+
+    private WeatherApiStub(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext(FORECAST_PATH, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public static WeatherApiStub start(Settings settings) throws IOException {
+        var stub = new WeatherApiStub(settings);
+        stub.server.start();
+        return stub;
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    // Settings can be changed while the stub is running, e.g. to simulate an outage
+    public void update(Settings settings) {
+        this.settings = settings;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    public int errorCount() {
+        return errors.get();
+    }
+
+    public int timeoutCount() {
+        return timeouts.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        var current = settings;
+        var random = ThreadLocalRandom.current();
+        try {
+            sleep(current.latency().next(random));
+            if (random.nextDouble() < current.timeoutRate()) {
+                timeouts.incrementAndGet();
+                sleep(current.timeoutDelay());
+            }
+            if (random.nextDouble() < current.errorRate()) {
+                errors.incrementAndGet();
+                respond(exchange, 500, "{\"error\": {\"code\": 500, \"message\": \"Internal error\", \"status\": \"INTERNAL\"}}");
+                return;
+            }
+            respond(exchange, 200, forecast(current.forecastHours(), random));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero() && !duration.isNegative()) {
+            Thread.sleep(duration);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Generates an hourly forecast in the shape of the real API, starting at the current hour
+    static String forecast(int hours, Random random) {
+        var start = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        var json = new StringBuilder(hours * 420).append("{\"forecastHours\":[");
+        for (int i = 0; i < hours; i++) {
+            var from = start.plus(i, ChronoUnit.HOURS);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"interval\":{\"startTime\":\"").append(from)
+                    .append("\",\"endTime\":\"").append(from.plus(1, ChronoUnit.HOURS)).append("\"},")
+                    .append("\"thunderstormProbability\":").append(random.nextInt(60)).append(',')
+                    .append("\"wind\":{\"speed\":{\"value\":").append(random.nextInt(50)).append(",\"unit\":\"KILOMETERS_PER_HOUR\"},")
+                    .append("\"gust\":{\"value\":").append(random.nextInt(70)).append(",\"unit\":\"KILOMETERS_PER_HOUR\"}},")
+                    .append("\"visibility\":{\"distance\":").append(random.nextInt(20)).append(",\"unit\":\"KILOMETERS\"},")
+                    .append("\"precipitation\":{\"probability\":{\"percent\":").append(random.nextInt(100))
+                    .append(",\"type\":\"").append(random.nextInt(10) == 0 ? "SNOW" : "RAIN").append("\"}}}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,92 @@
+package io.example;
+
+import io.example.application.FlightConditionsAgent;
+import io.example.application.ForecastCache;
+import io.example.domain.Airfield;
+import io.example.domain.SlotIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Measures the weather path (HTTP fetch, parse and cache) against the local
+// weather API stub, so it runs offline and without an API key. Not part of
+// the regular test run, enable it with `mvn test -Dbenchmarks=true`.
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+public class WeatherPathBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(WeatherPathBenchmarkTest.class);
+    private static final int REGIONS = 50;
+    private static final int LOOKUPS = 2_000;
+
+    @Test
+    public void healthyUpstream() throws Exception {
+        var settings = WeatherApiStub.Settings.healthy()
+                .withLatency(WeatherApiStub.Latency.logNormal(Duration.ofMillis(20), 0.5));
+        try (var stub = WeatherApiStub.start(settings)) {
+            var result = run(stub);
+            assertEquals(0, result.failures());
+            // One fetch per region, every other lookup is served from the cache
+            assertEquals(REGIONS, stub.requestCount());
+        }
+    }
+
+    @Test
+    public void failingUpstream() throws Exception {
+        var settings = WeatherApiStub.Settings.healthy()
+                .withLatency(WeatherApiStub.Latency.uniform(Duration.ofMillis(5), Duration.ofMillis(50)))
+                .withErrorRate(0.3);
+        try (var stub = WeatherApiStub.start(settings)) {
+            var result = run(stub);
+            assertTrue(result.failures() > 0);
+            assertTrue(stub.errorCount() > 0);
+        }
+    }
+
+    record Result(int successes, int failures) {
+    }
+
+    private Result run(WeatherApiStub stub) throws Exception {
+        var cache = new ForecastCache(
+                FlightConditionsAgent.HTTP_WEATHER_SERVICE, stub.baseUrl(), 0.5, Duration.ofMinutes(30), Clock.systemUTC());
+        var slotId = SlotIds.fromEpochHour(Instant.now().getEpochSecond() / 3600 + 5);
+        var successes = new AtomicInteger();
+        var failures = new AtomicInteger();
+
+        var tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            // Regions are one cell apart
+            var airfield = new Airfield("a" + i, "A", 10 + (i % REGIONS), 10);
+            tasks.add(() -> {
+                try {
+                    if (cache.forecastFor(airfield, slotId).isPresent()) {
+                        successes.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        long start = System.nanoTime();
+        try (var executor = Executors.newFixedThreadPool(32)) {
+            executor.invokeAll(tasks);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        log.info("{} lookups over {} regions in {} ms ({} lookups/s): {} ok, {} failed, {} upstream requests",
+                LOOKUPS, REGIONS, millis, Math.round(LOOKUPS * 1000.0 / Math.max(1, millis)),
+                successes.get(), failures.get(), stub.requestCount());
+        return new Result(successes.get(), failures.get());
+    }
+}